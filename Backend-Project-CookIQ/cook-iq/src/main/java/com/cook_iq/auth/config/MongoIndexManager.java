@@ -0,0 +1,218 @@
+package com.cook_iq.auth.config;
+
+import com.cook_iq.auth.model.BlogCommentBucket;
+import com.cook_iq.auth.model.BlogPost;
+import com.cook_iq.auth.model.Category;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.model.RefreshToken;
+import com.cook_iq.auth.model.User;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Khai báo tập index cho các collection chính và kiểm tra lúc khởi động:
+ * 1. Tạo index còn thiếu (auto-index-creation của Spring Data đang tắt).
+ * 2. Explain từng query của repository và báo cáo query nào phải quét toàn collection (COLLSCAN)
+ *    hoặc sort trong bộ nhớ. Với app.mongo.fail-on-unindexed=true (production) thì dừng khởi động.
+ * Index riêng của từng tính năng (TTL token, idempotency...) vẫn do service đó tạo.
+ */
+@Slf4j
+@Component
+public class MongoIndexManager {
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean failOnUnindexed;
+
+    public MongoIndexManager(MongoTemplate mongoTemplate,
+                             @Value("${app.mongo.fail-on-unindexed:false}") boolean failOnUnindexed) {
+        this.mongoTemplate = mongoTemplate;
+        this.failOnUnindexed = failOnUnindexed;
+    }
+
+    @PostConstruct
+    public void init() {
+        List<String> problems = new ArrayList<>();
+        for (IndexDefinition definition : indexes()) {
+            try {
+                mongoTemplate.indexOps(definition.entity()).createIndex(definition.index());
+            } catch (RuntimeException e) {
+                // Thường gặp: dữ liệu cũ bị trùng email / slug nên không tạo được unique index
+                problems.add("Không tạo được index " + definition.index().getIndexKeys().toJson()
+                        + " trên " + collection(definition.entity()) + ": " + e.getMessage());
+            }
+        }
+        for (QueryProbe probe : probes()) {
+            String plan = explain(probe);
+            if (plan != null) {
+                problems.add(probe.name() + ": " + plan);
+            }
+        }
+
+        if (problems.isEmpty()) {
+            log.info("Index Mongo: mọi query của repository đều dùng index");
+            return;
+        }
+        problems.forEach(p -> log.warn("Index Mongo: {}", p));
+        if (failOnUnindexed) {
+            throw new IllegalStateException("Có " + problems.size() + " query Mongo không dùng index: " + problems);
+        }
+    }
+
+    private List<IndexDefinition> indexes() {
+        return List.of(
+                new IndexDefinition(User.class, new Index().on("email", Sort.Direction.ASC).unique()),
+                new IndexDefinition(User.class, new Index().on("createdAt", Sort.Direction.DESC)),
+
+                new IndexDefinition(Product.class, new Index().on("slug", Sort.Direction.ASC).unique().sparse()),
+                new IndexDefinition(Product.class, new Index()
+                        .on("categoryId", Sort.Direction.ASC).on("updatedAt", Sort.Direction.DESC)),
+                new IndexDefinition(Product.class, new Index().on("isActive", Sort.Direction.ASC)),
+                new IndexDefinition(Product.class, new Index().on("updatedAt", Sort.Direction.ASC)),
+                new IndexDefinition(Product.class, new Index().on("stockReservations.at", Sort.Direction.ASC).sparse()),
+
+                new IndexDefinition(Category.class, new Index().on("slug", Sort.Direction.ASC).unique().sparse()),
+                new IndexDefinition(Category.class, new Index().on("parentId", Sort.Direction.ASC)),
+
+                new IndexDefinition(BlogPost.class, new Index()
+                        .on("approved", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC)),
+                new IndexDefinition(BlogPost.class, new Index().on("authorId", Sort.Direction.ASC)),
+                new IndexDefinition(BlogCommentBucket.class, new Index().on("postId", Sort.Direction.ASC)),
+
+                // Danh sách đơn của user / admin (keyset createdAt, _id), lọc theo trạng thái, timer theo updatedAt
+                new IndexDefinition(Order.class, new Index().on("userId", Sort.Direction.ASC)
+                        .on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)),
+                new IndexDefinition(Order.class, new Index()
+                        .on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)),
+                new IndexDefinition(Order.class, new Index().on("status", Sort.Direction.ASC)
+                        .on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)),
+                new IndexDefinition(Order.class, new Index()
+                        .on("status", Sort.Direction.ASC).on("updatedAt", Sort.Direction.ASC))
+        );
+    }
+
+    // Mỗi query của repository (và các query tay chính) với giá trị mẫu
+    private List<QueryProbe> probes() {
+        Date now = new Date();
+        return List.of(
+                new QueryProbe("UserRepository.findByEmail / existsByEmail", User.class,
+                        new Document("email", "probe@example.com"), null),
+                new QueryProbe("UserRepository.findAllByOrderByCreatedAtDesc", User.class,
+                        new Document(), new Document("createdAt", -1)),
+
+                new QueryProbe("ProductRepository.findBySlug", Product.class,
+                        new Document("slug", "probe"), null),
+                new QueryProbe("ProductRepository.findByCategoryId", Product.class,
+                        new Document("categoryId", "probe"), null),
+                new QueryProbe("ProductService.getCategoryStamp", Product.class,
+                        new Document("categoryId", "probe"), new Document("updatedAt", -1)),
+                new QueryProbe("ProductService.getCategoryStamp (cây con)", Product.class,
+                        new Document("categoryId", new Document("$in", List.of("probe", "probe2"))),
+                        new Document("updatedAt", -1)),
+                new QueryProbe("ProductRepository.findByIsActiveTrue", Product.class,
+                        new Document("isActive", true), null),
+                new QueryProbe("ProductFacetService.sync / ProductSearchService.sync", Product.class,
+                        new Document("updatedAt", new Document("$gte", now)), null),
+                new QueryProbe("OrderService.sweepReservations", Product.class,
+                        new Document("stockReservations.at", new Document("$lt", now)), null),
+
+                new QueryProbe("CategoryRepository.findBySlug", Category.class,
+                        new Document("slug", "probe"), null),
+                new QueryProbe("CategoryService.deleteCategory (parentId)", Category.class,
+                        new Document("parentId", "probe"), null),
+
+                new QueryProbe("BlogPostRepository.findByApproved", BlogPost.class,
+                        new Document("approved", false), null),
+                new QueryProbe("BlogPostRepository.findByApprovedTrueOrderByCreatedAtDesc", BlogPost.class,
+                        new Document("approved", true), new Document("createdAt", -1)),
+                new QueryProbe("BlogPostRepository.findByAuthorId", BlogPost.class,
+                        new Document("authorId", "probe"), null),
+                new QueryProbe("BlogService.deleteComments", BlogCommentBucket.class,
+                        new Document("postId", "probe"), null),
+
+                new QueryProbe("OrderRepository.findByUserIdOrderByCreatedAtDesc", Order.class,
+                        new Document("userId", "probe"), new Document("createdAt", -1)),
+                new QueryProbe("OrderRepository.findAllByOrderByCreatedAtDesc", Order.class,
+                        new Document(), new Document("createdAt", -1)),
+                new QueryProbe("OrderQueryService.getPage (status)", Order.class,
+                        new Document("status", "PENDING"), new Document("createdAt", -1).append("_id", -1)),
+                new QueryProbe("OrderService.backfillTransitions", Order.class,
+                        new Document("status", new Document("$in", List.of("PENDING", "SHIPPING", "DELIVERED"))), null),
+                new QueryProbe("OrderExportService.export (createdAt)", Order.class,
+                        new Document("createdAt", new Document("$gte", now)), new Document("createdAt", 1).append("_id", 1)),
+
+                new QueryProbe("RefreshTokenRepository.deleteByFamilyId", RefreshToken.class,
+                        new Document("familyId", "probe"), null),
+                new QueryProbe("RefreshTokenRepository.deleteByUserId", RefreshToken.class,
+                        new Document("userId", "probe"), null)
+        );
+    }
+
+    /**
+     * @return mô tả vấn đề nếu plan thắng có COLLSCAN hoặc SORT trong bộ nhớ, null nếu ổn
+     */
+    private String explain(QueryProbe probe) {
+        Document find = new Document("find", collection(probe.entity()))
+                .append("filter", probe.filter())
+                .append("limit", 1);
+        if (probe.sort() != null) {
+            find.append("sort", probe.sort());
+        }
+        try {
+            Document result = mongoTemplate.getDb().runCommand(
+                    new Document("explain", find).append("verbosity", "queryPlanner"));
+            Document planner = result.get("queryPlanner", Document.class);
+            Object winningPlan = planner != null ? planner.get("winningPlan") : null;
+            if (hasStage(winningPlan, "COLLSCAN")) {
+                return "COLLSCAN";
+            }
+            if (hasStage(winningPlan, "SORT")) {
+                return "sort trong bộ nhớ";
+            }
+            return null;
+        } catch (RuntimeException e) {
+            return "explain lỗi: " + e.getMessage();
+        }
+    }
+
+    // Duyệt toàn bộ cây plan (khác nhau giữa classic engine và SBE: winningPlan.queryPlan...)
+    private boolean hasStage(Object node, String stage) {
+        if (node instanceof Document doc) {
+            if (stage.equals(doc.get("stage"))) {
+                return true;
+            }
+            for (Object value : doc.values()) {
+                if (hasStage(value, stage)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : list) {
+                if (hasStage(value, stage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String collection(Class<?> entity) {
+        return mongoTemplate.getCollectionName(entity);
+    }
+
+    private record IndexDefinition(Class<?> entity, Index index) {
+    }
+
+    private record QueryProbe(String name, Class<?> entity, Document filter, Document sort) {
+    }
+}
@@ -2,15 +2,17 @@ package com.cook_iq.auth.controller;
 
 import com.cook_iq.auth.dto.LoginRequest;
 import com.cook_iq.auth.dto.LoginResponse;
+import com.cook_iq.auth.dto.RefreshTokenRequest;
 import com.cook_iq.auth.dto.RegisterRequest;
+import com.cook_iq.auth.dto.TokenRefreshResponse;
 import com.cook_iq.auth.dto.UpdateProfileRequest;
 import com.cook_iq.auth.model.User;
+import com.cook_iq.auth.security.AuthUser;
+import com.cook_iq.auth.security.CurrentUser;
 import com.cook_iq.auth.service.AuthService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -39,6 +41,21 @@ public class AuthController {
         return ResponseEntity.ok(response);
     }
 
+    // Lấy access token mới bằng refresh token (xoay vòng refresh token)
+    @PostMapping("/refresh")
+    public ResponseEntity<TokenRefreshResponse> refresh(@RequestBody RefreshTokenRequest request) {
+        return ResponseEntity.ok(authService.refresh(request.getRefreshToken()));
+    }
+
+    // Đăng xuất: thu hồi refresh token (cả family) và access token hiện tại
+    @PostMapping("/logout")
+    public ResponseEntity<String> logout(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                         @RequestBody(required = false) RefreshTokenRequest request) {
+        String accessToken = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7) : null;
+        authService.logout(request != null ? request.getRefreshToken() : null, accessToken);
+        return ResponseEntity.ok("Đăng xuất thành công");
+    }
+
     // Lấy thông tin user hiện tại theo userId (có thể lấy từ JWT)
     @GetMapping("/{userId}")
     public ResponseEntity<User> getUser(@PathVariable String userId) {
@@ -52,10 +69,7 @@ public class AuthController {
             @PathVariable String userId,
             @RequestBody User updatedUser
     ) {
-        User user = authService.getCurrentUser(userId);
-        user.setFullName(updatedUser.getFullName() != null ? updatedUser.getFullName() : user.getFullName());
-        user.setEmail(updatedUser.getEmail() != null ? updatedUser.getEmail() : user.getEmail());
-        authService.getUserRepository().save(user);
+        User user = authService.updateUser(userId, updatedUser);
         return ResponseEntity.ok(user);
     }
 
@@ -63,7 +77,7 @@ public class AuthController {
     @PreAuthorize("hasRole('ADMIN')")
     @DeleteMapping("/{userId}")
     public ResponseEntity<String> deleteUser(@PathVariable String userId) {
-        authService.getUserRepository().deleteById(userId);
+        authService.deleteUser(userId);
         return ResponseEntity.ok("Xoá user thành công");
     }
 
@@ -76,23 +90,9 @@ public class AuthController {
     }
 
     @PutMapping("/profile/update") // API mới
-    public ResponseEntity<User> updateProfile(@RequestHeader("Authorization") String token,
+    public ResponseEntity<User> updateProfile(@CurrentUser AuthUser currentUser,
                                               @RequestBody UpdateProfileRequest req) {
-        // Trích xuất userId từ token hoặc dùng SecurityContext
-        // Ở đây giả sử bạn gửi userId kèm theo hoặc lấy từ context.
-        // Cách đơn giản nhất nếu bạn đã có filter:
-
-        // String username = jwtService.extractUsername(token.substring(7));
-        // User user = authService.getUserRepository().findByEmail(username).get();
-
-        // TUY NHIÊN, để đơn giản cho frontend gọi, ta có thể nhận userId từ token ở tầng service hoặc SecurityContextHolder
-        // Nhưng ở AuthController bạn đã có endpoint update user theo ID, ta dùng lại hoặc viết mới.
-
-        // Cách lấy User hiện tại đang login chuẩn nhất:
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String currentPrincipalName = authentication.getName(); // Đây là email
-        User currentUser = authService.getUserRepository().findByEmail(currentPrincipalName).get();
-
+        // userId lấy thẳng từ principal (JwtAuthenticationFilter), không cần findByEmail
         return ResponseEntity.ok(authService.updateProfile(currentUser.getId(), req));
     }
 
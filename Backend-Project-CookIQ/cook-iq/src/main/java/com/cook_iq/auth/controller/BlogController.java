@@ -1,11 +1,16 @@
 package com.cook_iq.auth.controller;
 
+import com.cook_iq.auth.dto.CommentPage;
 import com.cook_iq.auth.dto.CreateBlogRequest;
 import com.cook_iq.auth.model.BlogPost;
 import com.cook_iq.auth.service.BlogService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 import com.cook_iq.auth.dto.AddCommentRequest;
 
@@ -58,11 +63,28 @@ public class BlogController {
 
     // Public: chi tiết 1 bài
     @GetMapping("/public/{id}")
-    public ResponseEntity<BlogPost> getPublicPost(@PathVariable String id) {
+    public ResponseEntity<BlogPost> getPublicPost(@PathVariable String id, WebRequest request) {
+        // Kiểm tra ETag / Last-Modified bằng projection nhỏ, chỉ load cả bài khi client chưa có bản mới nhất
+        BlogPost stamp = blogService.getApprovedPostStamp(id);
+        long version = stamp.getVersion() != null ? stamp.getVersion() : 0L;
+        LocalDateTime modified = stamp.getUpdatedAt() != null ? stamp.getUpdatedAt()
+                : stamp.getApprovedAt() != null ? stamp.getApprovedAt() : stamp.getCreatedAt();
+        long lastModified = modified != null ? modified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+        if (request.checkNotModified(id + "-" + version, lastModified)) {
+            return null;
+        }
         BlogPost post = blogService.getApprovedPostById(id);
         return ResponseEntity.ok(post);
     }
 
+    // Public: comment của bài, mới nhất trước; trang sau truyền before = nextBefore của trang trước
+    @GetMapping("/public/{id}/comments")
+    public ResponseEntity<CommentPage> getComments(@PathVariable String id,
+                                                   @RequestParam(required = false) Long before,
+                                                   @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(blogService.getComments(id, before, Math.min(Math.max(limit, 1), 100)));
+    }
+
     @PostMapping("/comment/{blogId}")
     public ResponseEntity<?> addComment(@PathVariable String blogId, @RequestBody AddCommentRequest req) {
         return ResponseEntity.ok(blogService.addComment(blogId, req));
@@ -0,0 +1,72 @@
+package com.cook_iq.auth.controller;
+
+import com.cook_iq.auth.dto.CategoryDetail;
+import com.cook_iq.auth.dto.CategoryNode;
+import com.cook_iq.auth.dto.CategoryRequest;
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.model.Category;
+import com.cook_iq.auth.service.CategoryService;
+import com.cook_iq.auth.service.ProductService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/categories")
+public class CategoryController {
+
+    private final CategoryService categoryService;
+    private final ProductService productService;
+
+    // Public endpoints
+    // Cả cây danh mục kèm số sản phẩm, phục vụ từ bộ nhớ; menu gửi lại ETag thì nhận 304
+    @GetMapping("/tree")
+    public List<CategoryNode> tree(WebRequest request) {
+        if (request.checkNotModified(categoryService.getTreeEtag())) {
+            return null;
+        }
+        return categoryService.getTree();
+    }
+
+    // Theo id hoặc slug: cây con + breadcrumb
+    @GetMapping("/{idOrSlug}")
+    public CategoryDetail get(@PathVariable String idOrSlug) {
+        return categoryService.getCategory(idOrSlug);
+    }
+
+    // Sản phẩm của danh mục và mọi danh mục con trong một query (categoryId $in các id của cây con)
+    @GetMapping("/{idOrSlug}/products")
+    public Page<ProductDto> products(@PathVariable String idOrSlug, Pageable pageable,
+                                     @RequestParam(required = false) String fields, WebRequest request) {
+        List<String> categoryIds = categoryService.getSubtreeIds(idOrSlug);
+        ProductService.CategoryStamp stamp = productService.getCategoryStamp(categoryIds);
+        String etag = Integer.toHexString(categoryIds.hashCode()) + "-" + stamp.tag()
+                + "-" + pageable.getPageNumber() + "-" + pageable.getPageSize()
+                + "-" + Integer.toHexString((pageable.getSort() + "|" + fields).hashCode());
+        if (request.checkNotModified(etag, stamp.lastModifiedMillis())) {
+            return null;
+        }
+        return productService.listProductsByCategories(categoryIds, pageable, fields);
+    }
+
+    // Admin endpoints
+    @PostMapping("/admin")
+    public Category create(@RequestBody CategoryRequest req) {
+        return categoryService.createCategory(req);
+    }
+
+    @PutMapping("/admin/{id}")
+    public Category update(@PathVariable String id, @RequestBody CategoryRequest req) {
+        return categoryService.updateCategory(id, req);
+    }
+
+    @DeleteMapping("/admin/{id}")
+    public void delete(@PathVariable String id) {
+        categoryService.deleteCategory(id);
+    }
+}
@@ -1,17 +1,32 @@
 package com.cook_iq.auth.controller;
 
+import com.cook_iq.auth.dto.ApiResponse;
 import com.cook_iq.auth.dto.CreateOrderRequest;
+import com.cook_iq.auth.dto.OrderPage;
+import com.cook_iq.auth.dto.SalesDashboard;
 import com.cook_iq.auth.model.Order;
 import com.cook_iq.auth.model.OrderStatus;
-import com.cook_iq.auth.model.User;
-import com.cook_iq.auth.service.AuthService;
+import com.cook_iq.auth.model.SalesRollup;
+import com.cook_iq.auth.security.AuthUser;
+import com.cook_iq.auth.security.CurrentUser;
+import com.cook_iq.auth.service.OrderExportService;
+import com.cook_iq.auth.service.OrderIngestionService;
+import com.cook_iq.auth.service.OrderQueryService;
 import com.cook_iq.auth.service.OrderService;
+import com.cook_iq.auth.service.SalesRollupService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -19,22 +34,44 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
-    private final AuthService authService;
+    private final OrderIngestionService orderIngestionService;
+    private final OrderQueryService orderQueryService;
+    private final OrderExportService orderExportService;
+    private final SalesRollupService salesRollupService;
 
-    // User tạo đơn
+    // User tạo đơn (gửi lại cùng Idempotency-Key thì nhận lại đơn cũ)
     @PostMapping("/create")
-    public ResponseEntity<Order> createOrder(@RequestBody CreateOrderRequest req) {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = authService.getUserRepository().findByEmail(email).orElseThrow();
-        return ResponseEntity.ok(orderService.createOrder(user.getId(), req));
+    public ResponseEntity<Order> createOrder(@CurrentUser AuthUser user,
+                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                             @RequestBody CreateOrderRequest req) {
+        return ResponseEntity.ok(orderIngestionService.createOrder(user.getId(), idempotencyKey, req));
+    }
+
+    // User tạo đơn bất đồng bộ: trả về id ngay, trạng thái theo dõi qua /my-orders
+    @PostMapping("/submit")
+    public ResponseEntity<Order> submitOrder(@CurrentUser AuthUser user,
+                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                             @RequestBody CreateOrderRequest req) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(orderIngestionService.submitOrder(user.getId(), idempotencyKey, req));
     }
 
     // User xem đơn của mình
     @GetMapping("/my-orders")
-    public ResponseEntity<List<Order>> getMyOrders() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = authService.getUserRepository().findByEmail(email).orElseThrow();
-        return ResponseEntity.ok(orderService.getUserOrders(user.getId()));
+    public ResponseEntity<List<Order>> getMyOrders(@CurrentUser AuthUser user) {
+        return ResponseEntity.ok(orderIngestionService.getUserOrders(user.getId()));
+    }
+
+    // User xem đơn của mình theo trang (cursor = nextCursor của trang trước)
+    @GetMapping("/my-orders/page")
+    public ResponseEntity<OrderPage> getMyOrdersPage(@CurrentUser AuthUser user,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer size,
+                                                     @RequestParam(required = false) OrderStatus status,
+                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                     @RequestParam(defaultValue = "false") boolean includeItems) {
+        return ResponseEntity.ok(orderQueryService.getPage(user.getId(), status, from, to, cursor, size, includeItems));
     }
 
     // Admin xem tất cả
@@ -43,6 +80,69 @@ public class OrderController {
         return ResponseEntity.ok(orderService.getAllOrders());
     }
 
+    // Admin xem tất cả theo trang
+    @GetMapping("/admin/page")
+    public ResponseEntity<OrderPage> getAllOrdersPage(@RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer size,
+                                                      @RequestParam(required = false) OrderStatus status,
+                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                      @RequestParam(defaultValue = "false") boolean includeItems) {
+        return ResponseEntity.ok(orderQueryService.getPage(null, status, from, to, cursor, size, includeItems));
+    }
+
+    // Admin xuất đơn hàng (ndjson | csv), stream thẳng từ cursor Mongo; gzip=true để nén
+    @GetMapping("/admin/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(defaultValue = OrderExportService.FORMAT_NDJSON) String format,
+                                                              @RequestParam(required = false) OrderStatus status,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                              @RequestParam(defaultValue = "false") boolean gzip) {
+        if (!OrderExportService.isSupported(format)) {
+            throw new RuntimeException("Định dạng không hỗ trợ: " + format);
+        }
+        String filename = "orders." + format + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : OrderExportService.FORMAT_CSV.equals(format) ? MediaType.parseMediaType("text/csv; charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream gz = new GZIPOutputStream(out, 64 * 1024)) {
+                    orderExportService.export(gz, format, status, from, to);
+                }
+            } else {
+                orderExportService.export(out, format, status, from, to);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    // Dashboard admin: doanh thu, số đơn theo trạng thái, sản phẩm bán chạy (granularity = DAY | HOUR)
+    @GetMapping("/admin/dashboard")
+    public ResponseEntity<SalesDashboard> getDashboard(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                       @RequestParam(defaultValue = SalesRollup.DAY) String granularity,
+                                                       @RequestParam(defaultValue = "10") int top) {
+        return ResponseEntity.ok(salesRollupService.dashboard(from, to, granularity, top));
+    }
+
+    // Dựng lại số liệu dashboard từ toàn bộ đơn hàng (backfill / sửa lệch)
+    @PostMapping("/admin/rollups/rebuild")
+    public ResponseEntity<ApiResponse> rebuildRollups() {
+        int buckets = salesRollupService.rebuild();
+        return ResponseEntity.ok(ApiResponse.success("Đã dựng lại sales rollup", buckets));
+    }
+
+    // Admin xác nhận đã nhận tiền của đơn chuyển khoản / QR (đơn không còn tự huỷ khi quá hạn thanh toán)
+    @PutMapping("/admin/{id}/paid")
+    public ResponseEntity<Order> markPaid(@PathVariable String id) {
+        return ResponseEntity.ok(orderService.markPaid(id));
+    }
+
     // Admin cập nhật trạng thái
     @PutMapping("/admin/{id}/status")
     public ResponseEntity<Order> updateStatus(@PathVariable String id, @RequestParam OrderStatus status) {
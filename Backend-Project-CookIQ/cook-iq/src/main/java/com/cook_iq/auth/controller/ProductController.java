@@ -1,13 +1,22 @@
 package com.cook_iq.auth.controller;
 
 import com.cook_iq.auth.dto.CreateProductRequest;
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.dto.ProductFacetResult;
+import com.cook_iq.auth.dto.Suggestion;
 import com.cook_iq.auth.dto.UpdateProductRequest;
 import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.service.ProductFacetService;
+import com.cook_iq.auth.service.ProductSearchService;
 import com.cook_iq.auth.service.ProductService;
+import com.cook_iq.auth.service.ProductSuggestService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
@@ -15,26 +24,70 @@ import org.springframework.web.bind.annotation.*;
 public class ProductController {
 
     private final ProductService productService;
+    private final ProductSearchService productSearchService;
+    private final ProductFacetService productFacetService;
+    private final ProductSuggestService productSuggestService;
 
     // Public endpoints
+    // Mặc định trả đủ field của ProductDto; fields=card chỉ trả thẻ (id, name, slug, price, currency, ảnh đầu,
+    // stockQuantity), fields=... để chọn field khác
     @GetMapping
-    public Page<Product> listAll(Pageable pageable) {
-        return productService.getAllProducts(pageable);
+    public Page<ProductDto> listAll(Pageable pageable, @RequestParam(required = false) String fields) {
+        return productService.listProducts(pageable, fields);
+    }
+
+    // Tìm theo tên, tag, mô tả ngắn; không phân biệt dấu ("ca chua" khớp "cà chua")
+    @GetMapping("/search")
+    public Page<ProductDto> search(@RequestParam String q, Pageable pageable) {
+        return productSearchService.search(q, pageable);
+    }
+
+    // Gợi ý khi gõ (tên sản phẩm, tag), không phân biệt dấu, sản phẩm bán chạy trước
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        return productSuggestService.suggest(q, limit);
     }
 
+    // Lọc theo facet: categoryId=a&categoryId=b (OR), tag=... (OR, tagMode=all để AND), minPrice/maxPrice,
+    // inStock, active (mặc định true); kèm số sản phẩm theo từng danh mục / tag / khoảng giá
+    @GetMapping("/facets")
+    public ProductFacetResult facets(@RequestParam(required = false) List<String> categoryId,
+                                     @RequestParam(required = false) List<String> tag,
+                                     @RequestParam(defaultValue = "any") String tagMode,
+                                     @RequestParam(required = false) Double minPrice,
+                                     @RequestParam(required = false) Double maxPrice,
+                                     @RequestParam(required = false) Boolean inStock,
+                                     @RequestParam(defaultValue = "true") Boolean active,
+                                     Pageable pageable) {
+        return productFacetService.filter(new ProductFacetService.FacetFilter(categoryId, tag,
+                "all".equalsIgnoreCase(tagMode), minPrice, maxPrice, inStock, active), pageable);
+    }
+
+    // Sản phẩm lấy từ near cache nên 304 không tốn query Mongo lẫn serialize
     @GetMapping("/{id}")
-    public Product getById(@PathVariable String id) {
-        return productService.getProductById(id);
+    public Product getById(@PathVariable String id, WebRequest request) {
+        Product product = productService.getProductById(id);
+        return notModified(product, request) ? null : product;
     }
 
     @GetMapping("/slug/{slug}")
-    public Product getBySlug(@PathVariable String slug) {
-        return productService.getProductBySlug(slug);
+    public Product getBySlug(@PathVariable String slug, WebRequest request) {
+        Product product = productService.getProductBySlug(slug);
+        return notModified(product, request) ? null : product;
     }
 
+    // ETag theo số sản phẩm + updatedAt mới nhất của danh mục (2 query trên index) + tồn kho sống của sản phẩm hot,
+    // chỉ load trang khi đã đổi
     @GetMapping("/category/{categoryId}")
-    public Page<Product> getByCategory(@PathVariable String categoryId, Pageable pageable) {
-        return productService.getProductsByCategory(categoryId, pageable);
+    public Page<ProductDto> getByCategory(@PathVariable String categoryId, Pageable pageable,
+                                          @RequestParam(required = false) String fields, WebRequest request) {
+        ProductService.CategoryStamp stamp = productService.getCategoryStamp(List.of(categoryId));
+        String etag = categoryId + "-" + stamp.tag() + "-" + pageable.getPageNumber()
+                + "-" + pageable.getPageSize() + "-" + Integer.toHexString((pageable.getSort() + "|" + fields).hashCode());
+        if (request.checkNotModified(etag, stamp.lastModifiedMillis())) {
+            return null;
+        }
+        return productService.listProductsByCategories(List.of(categoryId), pageable, fields);
     }
 
     // Admin endpoints
@@ -57,4 +110,12 @@ public class ProductController {
     public void delete(@PathVariable String id) {
         productService.deleteProduct(id);
     }
+
+    // Tồn kho nằm trong ETag vì sản phẩm hot đổi tồn kho (ledger) mà không tăng version
+    private boolean notModified(Product product, WebRequest request) {
+        long version = product.getVersion() != null ? product.getVersion() : 0L;
+        long lastModified = product.getUpdatedAt() != null ? product.getUpdatedAt().toEpochMilli() : -1;
+        return request.checkNotModified(
+                product.getId() + "-" + version + "-" + product.getStockQuantity(), lastModified);
+    }
 }
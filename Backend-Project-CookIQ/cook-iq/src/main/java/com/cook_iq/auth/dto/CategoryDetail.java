@@ -0,0 +1,10 @@
+package com.cook_iq.auth.dto;
+
+import java.util.List;
+
+// Danh mục kèm cây con và breadcrumb từ gốc tới chính nó
+public record CategoryDetail(CategoryNode category, List<Breadcrumb> breadcrumbs) {
+
+    public record Breadcrumb(String id, String name, String slug) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.cook_iq.auth.dto;
+
+import java.util.List;
+
+// Một node của cây danh mục; productCount = số sản phẩm active trong danh mục và mọi danh mục con
+public record CategoryNode(String id, String name, String slug, long productCount, List<CategoryNode> children) {
+}
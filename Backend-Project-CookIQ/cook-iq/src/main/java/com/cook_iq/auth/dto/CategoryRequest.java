@@ -0,0 +1,13 @@
+package com.cook_iq.auth.dto;
+
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryRequest {
+    private String name;
+    private String slug;
+    // null = danh mục gốc
+    private String parentId;
+}
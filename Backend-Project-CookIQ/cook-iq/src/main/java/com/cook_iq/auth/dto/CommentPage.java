@@ -0,0 +1,9 @@
+package com.cook_iq.auth.dto;
+
+import com.cook_iq.auth.model.BlogPost;
+
+import java.util.List;
+
+// Một trang comment, mới nhất trước; nextBefore = null khi đã hết
+public record CommentPage(List<BlogPost.Comment> comments, Long nextBefore) {
+}
@@ -16,4 +16,5 @@ public class LoginResponse {
     private String avatarUrl;
     private LocalDateTime createdAt;
     private String token;
+    private String refreshToken;
 }
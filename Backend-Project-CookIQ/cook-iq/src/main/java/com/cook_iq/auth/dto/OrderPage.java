@@ -0,0 +1,9 @@
+package com.cook_iq.auth.dto;
+
+import com.cook_iq.auth.model.Order;
+
+import java.util.List;
+
+// Một trang đơn hàng; nextCursor = null khi đã hết
+public record OrderPage(List<Order> orders, String nextCursor) {
+}
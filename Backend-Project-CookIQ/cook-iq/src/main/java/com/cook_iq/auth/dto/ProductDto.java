@@ -1,14 +1,27 @@
 package com.cook_iq.auth.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import java.util.List;
 
 
+// Sản phẩm cho trang danh sách: chỉ các field được chọn (mặc định ALL_FIELDS, fields=card là CARD_FIELDS) có giá trị,
+// field null không serialize
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class ProductDto {
+
+    // Giá trị fields để lấy dạng thẻ
+    public static final String CARD = "card";
+    public static final List<String> CARD_FIELDS =
+            List.of("id", "name", "slug", "price", "currency", "images", "stockQuantity");
+    public static final List<String> ALL_FIELDS =
+            List.of("id", "name", "slug", "shortDescription", "description", "price", "currency",
+                    "categoryId", "images", "stockQuantity", "unit", "tags", "isActive");
+
     private String id;
     private String name;
     private String slug;
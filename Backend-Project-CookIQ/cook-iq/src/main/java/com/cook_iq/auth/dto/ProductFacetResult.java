@@ -0,0 +1,15 @@
+package com.cook_iq.auth.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// Kết quả lọc facet: trang thẻ sản phẩm + số sản phẩm theo từng giá trị facet (đếm khi bỏ bộ lọc của chính facet đó)
+public record ProductFacetResult(List<ProductDto> content,
+                                 long totalElements,
+                                 int page,
+                                 int size,
+                                 Map<String, Long> categories,
+                                 Map<String, Long> tags,
+                                 Map<String, Long> priceRanges,
+                                 long inStock) {
+}
@@ -0,0 +1,8 @@
+package com.cook_iq.auth.dto;
+
+import lombok.Data;
+
+@Data
+public class RefreshTokenRequest {
+    private String refreshToken;
+}
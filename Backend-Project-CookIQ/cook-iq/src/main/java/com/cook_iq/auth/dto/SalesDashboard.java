@@ -0,0 +1,17 @@
+package com.cook_iq.auth.dto;
+
+import com.cook_iq.auth.model.SalesRollup;
+
+import java.util.List;
+import java.util.Map;
+
+// Dashboard admin: các bucket theo giờ / ngày trong khoảng xem + tổng cộng + sản phẩm bán chạy
+public record SalesDashboard(List<SalesRollup> buckets,
+                             double revenue,
+                             long orderCount,
+                             Map<String, Long> statusCounts,
+                             List<ProductSales> topProducts) {
+
+    public record ProductSales(String productId, String productName, long units) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.cook_iq.auth.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Một gợi ý tìm kiếm: tên sản phẩm (kèm id, slug để mở thẳng trang sản phẩm) hoặc một tag
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Suggestion(String type, String text, String productId, String slug) {
+
+    public static final String PRODUCT = "product";
+    public static final String TAG = "tag";
+}
@@ -0,0 +1,4 @@
+package com.cook_iq.auth.dto;
+
+public record TokenRefreshResponse(String token, String refreshToken) {
+}
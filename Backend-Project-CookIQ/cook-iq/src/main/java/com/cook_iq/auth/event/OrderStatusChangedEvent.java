@@ -0,0 +1,14 @@
+package com.cook_iq.auth.event;
+
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+
+/**
+ * Bắn ra khi đơn hàng được tạo hoặc đổi trạng thái (admin hoặc timer tự động).
+ *
+ * @param order     đơn hàng sau khi thay đổi
+ * @param oldStatus trạng thái trước đó (null nếu đơn vừa được tạo)
+ * @param newStatus trạng thái hiện tại
+ */
+public record OrderStatusChangedEvent(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+}
@@ -0,0 +1,12 @@
+package com.cook_iq.auth.event;
+
+import com.cook_iq.auth.model.Product;
+
+/**
+ * Bắn ra khi admin tạo / sửa / xoá sản phẩm để các index trong bộ nhớ cập nhật ngay.
+ *
+ * @param productId id của sản phẩm
+ * @param product   bản mới nhất (null nếu sản phẩm bị xoá)
+ */
+public record ProductChangedEvent(String productId, Product product) {
+}
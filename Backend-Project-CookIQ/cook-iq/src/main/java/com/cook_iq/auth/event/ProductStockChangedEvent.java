@@ -0,0 +1,11 @@
+package com.cook_iq.auth.event;
+
+/**
+ * Bắn ra khi admin điều chỉnh tồn kho (PATCH /stock); tách khỏi {@link ProductChangedEvent}
+ * để các index chỉ quan tâm tới nội dung (tìm kiếm) không phải index lại.
+ *
+ * @param productId     id của sản phẩm
+ * @param stockQuantity tồn kho sau khi điều chỉnh
+ */
+public record ProductStockChangedEvent(String productId, int stockQuantity) {
+}
@@ -0,0 +1,11 @@
+package com.cook_iq.auth.event;
+
+/**
+ * Bắn ra mỗi khi user bị sửa hoặc xoá để các cache liên quan invalidate ngay.
+ *
+ * @param userId   id của user
+ * @param oldEmail email trước khi thay đổi (có thể null nếu không biết)
+ * @param newEmail email sau khi thay đổi (null nếu user bị xoá)
+ */
+public record UserChangedEvent(String userId, String oldEmail, String newEmail) {
+}
@@ -0,0 +1,15 @@
+package com.cook_iq.auth.exception;
+
+import lombok.Getter;
+
+// Ném ra khi server đang quá tải, trả về 429 kèm header Retry-After
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
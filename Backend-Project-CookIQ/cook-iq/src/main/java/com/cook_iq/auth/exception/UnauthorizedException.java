@@ -0,0 +1,9 @@
+package com.cook_iq.auth.exception;
+
+// Trả về 401 (token không hợp lệ, hết hạn hoặc đã bị thu hồi)
+public class UnauthorizedException extends RuntimeException {
+
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,31 @@
+package com.cook_iq.auth.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Toàn bộ comment của một bài, mỗi bucket tối đa app.blog.comment-bucket-size comment theo seq; id = "postId:bucket"
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "blog_comment_buckets")
+public class BlogCommentBucket {
+
+    @Id
+    private String id;
+
+    private String postId;
+
+    // seq của comment thuộc bucket: [bucket * size + 1, (bucket + 1) * size]
+    private Long bucket;
+
+    private Integer count;
+
+    @Builder.Default
+    private List<BlogPost.Comment> comments = new ArrayList<>();
+}
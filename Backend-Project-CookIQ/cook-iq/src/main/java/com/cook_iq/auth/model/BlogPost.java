@@ -36,16 +36,25 @@ public class BlogPost {
     private LocalDateTime createdAt;
     private LocalDateTime approvedAt;
 
-    // Khởi tạo list rỗng để tránh lỗi NullPointerException
+    // Tăng mỗi khi bài thay đổi (duyệt, thêm comment); dùng làm ETag
+    private Long version;
+    private LocalDateTime updatedAt;
+
+    // Chỉ app.blog.recent-comments comment mới nhất; đầy đủ nằm trong blog_comment_buckets
     @Builder.Default
     private List<Comment> comments = new ArrayList<>();
 
+    // Tổng số comment, cũng là seq của comment mới nhất (null = bài chưa chuyển comment sang bucket)
+    private Long commentCount;
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
     @Builder
     public static class Comment {
         private String id;
+        // Số thứ tự trong bài (1, 2, ...), xác định bucket chứa comment
+        private Long seq;
         private String userId;
         private String userName; // Lưu luôn tên lúc comment
         private String userAvatar;
@@ -0,0 +1,27 @@
+package com.cook_iq.auth.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Idempotency-Key đã dùng khi tạo đơn (key = userId:idempotencyKey) → đơn hàng đã tạo từ key đó
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+    @Id
+    private String id;
+
+    private String orderId;
+
+    private Date createdAt;
+
+    // TTL index: hết thời gian lưu giữ thì key được dùng lại như key mới
+    private Date expiresAt;
+}
@@ -27,9 +27,16 @@ public class Order {
     // Thông tin thanh toán
     private Double totalAmount;
     private String paymentMethod; // COD, BANK, QR
+    // Hạn thanh toán của đơn trả trước: quá hạn mà chưa có paidAt thì tự huỷ.
+    // null = không tự huỷ (COD, hoặc đơn tạo trước khi có hạn thanh toán)
+    private LocalDateTime paymentDueAt;
+    // Thời điểm admin xác nhận đã nhận tiền
+    private LocalDateTime paidAt;
 
     // Trạng thái
     private OrderStatus status;
+    // Lý do hủy khi đơn nhận qua hàng đợi không giữ được tồn kho
+    private String cancelReason;
 
     // Danh sách sản phẩm
     private List<OrderItem> items;
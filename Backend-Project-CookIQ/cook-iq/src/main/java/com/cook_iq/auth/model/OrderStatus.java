@@ -5,5 +5,6 @@ public enum OrderStatus {
     CONFIRMED,  // Đã duyệt (Đang chờ vận chuyển)
     SHIPPING,   // Đang giao hàng
     DELIVERED,  // Đã giao hàng thành công
+    COMPLETED,  // Hoàn tất (hết thời gian khiếu nại sau khi giao)
     CANCELLED   // Đã hủy
 }
@@ -10,7 +10,7 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @Document(collection = "products")
 public class Product {
     @Id
@@ -29,4 +29,10 @@ public class Product {
     private Boolean isActive = true;
     private Instant createdAt = Instant.now();
     private Instant updatedAt = Instant.now();
+
+    // Tăng mỗi khi document thay đổi (sửa, đổi tồn kho); dùng cho near cache
+    private Long version;
+
+    // Seq cuối cùng của InventoryLedger đã flush vào stockQuantity (chỉ dùng cho sản phẩm hot)
+    private Long ledgerSeq;
 }
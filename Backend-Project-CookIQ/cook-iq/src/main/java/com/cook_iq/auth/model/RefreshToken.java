@@ -0,0 +1,32 @@
+package com.cook_iq.auth.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Mỗi refresh token đã cấp (key = jti). Token cũ được giữ lại với used=true đến khi hết hạn để phát hiện dùng lại.
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "refresh_tokens")
+public class RefreshToken {
+
+    @Id
+    private String id;
+
+    // Tất cả token sinh ra từ cùng một lần login
+    private String familyId;
+
+    private String userId;
+
+    private boolean used;
+
+    private Date createdAt;
+
+    // TTL index: Mongo tự xoá document khi quá thời điểm này
+    private Date expiresAt;
+}
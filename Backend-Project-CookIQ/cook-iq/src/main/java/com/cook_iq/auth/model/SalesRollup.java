@@ -0,0 +1,45 @@
+package com.cook_iq.auth.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+// Số liệu bán hàng cộng dồn theo giờ / ngày (theo createdAt của đơn), key = "HOUR:2026-10-18T13" / "DAY:2026-10-18"
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "sales_rollups")
+public class SalesRollup {
+
+    public static final String HOUR = "HOUR";
+    public static final String DAY = "DAY";
+
+    @Id
+    private String id;
+
+    private String granularity;
+
+    private LocalDateTime bucketStart;
+
+    // Doanh thu và số lượng bán chỉ tính đơn chưa huỷ
+    @Builder.Default
+    private Double revenue = 0.0;
+
+    // Số đơn được tạo trong khoảng thời gian này (kể cả đơn đã huỷ)
+    @Builder.Default
+    private Long orderCount = 0L;
+
+    // Số đơn hiện đang ở từng OrderStatus
+    @Builder.Default
+    private Map<String, Long> statusCounts = new HashMap<>();
+
+    // productId → số lượng bán
+    @Builder.Default
+    private Map<String, Long> unitsByProduct = new HashMap<>();
+}
@@ -0,0 +1,29 @@
+package com.cook_iq.auth.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Chuyển trạng thái hẹn giờ (mỗi đối tượng tối đa một timer, key = targetId). Nạp lại vào timing wheel khi khởi động.
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "scheduled_transitions")
+public class ScheduledTransition {
+
+    @Id
+    private String id;
+
+    // Chỉ chuyển nếu đối tượng vẫn đang ở trạng thái này
+    private String fromStatus;
+
+    private String toStatus;
+
+    private Date fireAt;
+
+    private Date createdAt;
+}
@@ -0,0 +1,36 @@
+package com.cook_iq.auth.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Một bản ghi thu hồi: theo jti (1 token) hoặc theo user (mọi token phát hành trước cutoff)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "token_revocations")
+public class TokenRevocation {
+
+    public static final String TYPE_TOKEN = "TOKEN";
+    public static final String TYPE_USER = "USER";
+
+    @Id
+    private String id;
+
+    private String type;
+
+    // jti hoặc userId tuỳ type
+    private String subject;
+
+    // Với TYPE_USER: token có iat <= cutoff bị thu hồi
+    private Date cutoff;
+
+    private Date createdAt;
+
+    // TTL index: sau thời điểm này mọi token liên quan đều đã hết hạn, Mongo tự xoá
+    private Date expiresAt;
+}
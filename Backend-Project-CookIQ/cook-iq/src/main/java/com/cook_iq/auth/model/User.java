@@ -24,6 +24,9 @@ public class User {
 
     private String avatarUrl;
 
+    // Tăng mỗi khi user bị đổi email / xoá để vô hiệu hoá các token đã cấp
+    private Long tokenVersion;
+
     @CreatedDate
     private LocalDateTime createdAt;
 }
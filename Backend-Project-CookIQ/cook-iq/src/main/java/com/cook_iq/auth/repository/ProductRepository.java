@@ -11,5 +11,4 @@ public interface ProductRepository extends MongoRepository<Product, String> {
     Optional<Product> findBySlug(String slug);
     Page<Product> findByCategoryId(String categoryId, Pageable pageable);
     Page<Product> findByIsActiveTrue(Pageable pageable);
-    Page<Product> findByNameContainingIgnoreCase(String name, Pageable pageable);
 }
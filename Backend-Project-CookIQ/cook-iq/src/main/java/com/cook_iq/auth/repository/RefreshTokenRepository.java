@@ -0,0 +1,9 @@
+package com.cook_iq.auth.repository;
+
+import com.cook_iq.auth.model.RefreshToken;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface RefreshTokenRepository extends MongoRepository<RefreshToken, String> {
+    void deleteByFamilyId(String familyId);
+    void deleteByUserId(String userId);
+}
@@ -0,0 +1,43 @@
+package com.cook_iq.auth.security;
+
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Principal của request đã xác thực. Mang sẵn userId, tên và avatar để controller
+ * không phải query lại user từ email.
+ */
+@Getter
+public class AuthUser implements UserDetails {
+
+    private final String id;
+    private final String email;
+    private final String fullName;
+    private final String avatarUrl;
+    private final String password;
+    private final List<GrantedAuthority> authorities;
+
+    public AuthUser(String id, String email, String fullName, String avatarUrl,
+                    String password, List<GrantedAuthority> authorities) {
+        this.id = id;
+        this.email = email;
+        this.fullName = fullName;
+        this.avatarUrl = avatarUrl;
+        this.password = password;
+        this.authorities = authorities;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+}
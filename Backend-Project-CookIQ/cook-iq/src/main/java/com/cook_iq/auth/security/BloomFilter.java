@@ -0,0 +1,61 @@
+package com.cook_iq.auth.security;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter cho chuỗi, thread-safe. mightContain() chỉ tính hash + đọc vài bit, không cấp phát object.
+ * Không hỗ trợ xoá: muốn bỏ phần tử thì dựng filter mới.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    BloomFilter(int bitCount, int hashCount) {
+        this.bitCount = Math.max(64, bitCount);
+        this.hashCount = hashCount;
+        this.bits = new AtomicLongArray((this.bitCount + 63) >>> 6);
+    }
+
+    void add(String value) {
+        int h = value.hashCode();
+        int h1 = mix(h);
+        int h2 = mix(h ^ 0x9E3779B9) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    boolean mightContain(String value) {
+        int h = value.hashCode();
+        int h1 = mix(h);
+        int h2 = mix(h ^ 0x9E3779B9) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Murmur3 finalizer: trộn đều các bit của hashCode
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,15 @@
+package com.cook_iq.auth.security;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Inject {@link AuthUser} của request hiện tại vào tham số controller.
+ * Ví dụ: {@code public ResponseEntity<?> myOrders(@CurrentUser AuthUser user)}
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CurrentUser {
+}
@@ -2,12 +2,17 @@ package com.cook_iq.auth.security;
 
 
 import com.cook_iq.auth.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -15,17 +20,28 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsServiceImpl userDetailsService;
+    private final TokenVersionService tokenVersionService;
+    private final TokenRevocationService tokenRevocationService;
+    private final boolean stateless;
 
     @Autowired
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsServiceImpl userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService,
+                                   UserDetailsServiceImpl userDetailsService,
+                                   TokenVersionService tokenVersionService,
+                                   TokenRevocationService tokenRevocationService,
+                                   @Value("${app.jwt.stateless:false}") boolean stateless) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.tokenVersionService = tokenVersionService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.stateless = stateless;
     }
 
     @Override
@@ -36,6 +52,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
+        final Claims claims;
         final String username;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
@@ -44,12 +61,33 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
-        username = jwtService.extractUsername(jwt);
+        // Parse + verify một lần duy nhất cho cả request
+        try {
+            claims = jwtService.parseClaims(jwt);
+        } catch (JwtException | IllegalArgumentException e) {
+            // Token hết hạn / sai chữ ký: đi tiếp như chưa đăng nhập để /api/auth/refresh và trang public vẫn gọi được
+            filterChain.doFilter(request, response);
+            return;
+        }
+        // Refresh token không được dùng làm access token
+        username = jwtService.isRefreshToken(claims) ? null : claims.getSubject();
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null
+                && !isRevoked(claims)) {
+            UserDetails userDetails = null;
 
-            if (jwtService.isTokenValid(jwt, userDetails)) {
+            if (stateless && claims.get(JwtService.CLAIM_USER_ID) != null) {
+                // Chế độ stateless: dựng principal từ claims, chỉ kiểm tra tokenVersion (không query user)
+                userDetails = principalFromClaims(claims);
+            } else {
+                // Token cũ (không có uid) hoặc tắt stateless: load user từ DB như trước
+                UserDetails loaded = userDetailsService.loadUserByUsername(username);
+                if (jwtService.isTokenValid(claims, loaded)) {
+                    userDetails = loaded;
+                }
+            }
+
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authToken =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
@@ -63,4 +101,31 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    // Token đã logout (jti) hoặc user đã bị xoá (cutoff theo uid)
+    private boolean isRevoked(Claims claims) {
+        long issuedAt = claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0L;
+        return tokenRevocationService.isRevoked(
+                claims.getId(), claims.get(JwtService.CLAIM_USER_ID, String.class), issuedAt);
+    }
+
+    // Trả về null nếu token đã bị thu hồi (tokenVersion không còn khớp)
+    @SuppressWarnings("unchecked")
+    private AuthUser principalFromClaims(Claims claims) {
+        String userId = claims.get(JwtService.CLAIM_USER_ID, String.class);
+        Number tokenVersion = claims.get(JwtService.CLAIM_TOKEN_VERSION, Number.class);
+        if (tokenVersion == null || !tokenVersionService.isCurrent(userId, tokenVersion.longValue())) {
+            return null;
+        }
+
+        List<String> roles = (List<String>) claims.get(JwtService.CLAIM_ROLES);
+        return new AuthUser(
+                userId,
+                claims.getSubject(),
+                claims.get(JwtService.CLAIM_FULL_NAME, String.class),
+                claims.get(JwtService.CLAIM_AVATAR, String.class),
+                "",
+                roles.stream().<GrantedAuthority>map(SimpleGrantedAuthority::new).toList()
+        );
+    }
 }
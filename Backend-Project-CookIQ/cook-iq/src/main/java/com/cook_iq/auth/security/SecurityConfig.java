@@ -2,6 +2,7 @@ package com.cook_iq.auth.security;
 
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -48,14 +49,14 @@ public class SecurityConfig {
                                 .requestMatchers("/api/blog/approve/**").hasRole("ADMIN")
                                 // ======= ANY AUTHENTICATED USER ==========
                                 .requestMatchers("/api/blog/create").hasAnyRole("USER", "ADMIN")
+                                // Admin only (phải đứng trước matcher public: matcher đầu tiên khớp sẽ được áp dụng)
+                                .requestMatchers("/api/products/admin/**").hasRole("ADMIN")
+                                .requestMatchers("/api/categories/admin/**").hasRole("ADMIN")
+
                                 // Public
                                 .requestMatchers("/api/products/**").permitAll() // Xem sản phẩm công khai
                                 .requestMatchers("/api/categories/**").permitAll() // Xem danh mục công khai
 
-                                // Admin only
-                                .requestMatchers("/api/products/admin/**").hasRole("ADMIN")
-                                .requestMatchers("/api/categories/admin/**").hasRole("ADMIN")
-
                                 // Blog routes
                                 .requestMatchers("/api/blog/public/**").permitAll()
                                 .requestMatchers("/api/blog/detail/**").permitAll()
@@ -64,9 +65,12 @@ public class SecurityConfig {
                                 .requestMatchers("/uploads/**").permitAll()
                                 .requestMatchers("/api/blog/comment/**").authenticated()
 
-                                .requestMatchers("/api/orders/create", "/api/orders/my-orders").authenticated()
+                                .requestMatchers("/api/orders/create", "/api/orders/submit", "/api/orders/my-orders", "/api/orders/my-orders/page").authenticated()
                                 .requestMatchers("/api/orders/admin/**").hasRole("ADMIN")
 
+                                // Metrics (cache hit/miss...) chỉ cho admin
+                                .requestMatchers("/actuator/**").hasRole("ADMIN")
+
 //                        .requestMatchers(HttpMethod.GET, "/").permitAll()
                                 .anyRequest().authenticated()
                 )
@@ -91,9 +95,12 @@ public class SecurityConfig {
         return config.getAuthenticationManager();
     }
 
+    @Value("${app.security.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
 
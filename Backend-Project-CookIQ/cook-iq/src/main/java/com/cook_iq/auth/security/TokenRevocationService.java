@@ -0,0 +1,173 @@
+package com.cook_iq.auth.security;
+
+import com.cook_iq.auth.event.UserChangedEvent;
+import com.cook_iq.auth.model.TokenRevocation;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Danh sách thu hồi token: theo jti (logout) và theo user (xoá user → mọi token phát hành trước cutoff).
+ * Kiểm tra đi qua Bloom filter trước nên đường "không bị thu hồi" chỉ tốn vài phép hash, không cấp phát.
+ * Bản ghi được lưu trong collection token_revocations (TTL theo exp của token) và nạp lại khi khởi động;
+ * các node khác nhận bản ghi mới qua lần đồng bộ định kỳ.
+ */
+@Slf4j
+@Service
+public class TokenRevocationService {
+
+    private final MongoTemplate mongoTemplate;
+    private final long accessTokenLifetimeMs;
+    private final int bloomBits;
+    private final int bloomHashes;
+
+    // jti -> thời điểm token hết hạn
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    // userId -> cutoff
+    private final Map<String, UserCutoff> userCutoffs = new ConcurrentHashMap<>();
+
+    private volatile BloomFilter tokenBloom;
+    private volatile BloomFilter userBloom;
+    private volatile Date lastSyncedAt = new Date(0);
+
+    public TokenRevocationService(MongoTemplate mongoTemplate,
+                                  @Value("${app.jwt.expiration}") long accessTokenLifetimeMs,
+                                  @Value("${app.jwt.revocation.bloom-bits:1048576}") int bloomBits,
+                                  @Value("${app.jwt.revocation.bloom-hashes:5}") int bloomHashes) {
+        this.mongoTemplate = mongoTemplate;
+        this.accessTokenLifetimeMs = accessTokenLifetimeMs;
+        this.bloomBits = bloomBits;
+        this.bloomHashes = bloomHashes;
+        this.tokenBloom = new BloomFilter(bloomBits, bloomHashes);
+        this.userBloom = new BloomFilter(bloomBits, bloomHashes);
+    }
+
+    @PostConstruct
+    public void init() {
+        mongoTemplate.indexOps(TokenRevocation.class)
+                .createIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(0));
+        mongoTemplate.indexOps(TokenRevocation.class)
+                .createIndex(new Index().on("createdAt", Sort.Direction.ASC));
+        sync();
+        log.info("Đã nạp {} token và {} user bị thu hồi", revokedTokens.size(), userCutoffs.size());
+    }
+
+    /**
+     * @param jti          id của token (có thể null với token cũ)
+     * @param userId       uid trong token (có thể null)
+     * @param issuedAtMs   iat của token, mili giây
+     */
+    public boolean isRevoked(String jti, String userId, long issuedAtMs) {
+        long now = System.currentTimeMillis();
+        if (jti != null && tokenBloom.mightContain(jti)) {
+            Long expiresAt = revokedTokens.get(jti);
+            if (expiresAt != null && expiresAt > now) {
+                return true;
+            }
+        }
+        if (userId != null && userBloom.mightContain(userId)) {
+            UserCutoff cutoff = userCutoffs.get(userId);
+            return cutoff != null && cutoff.expiresAt > now && issuedAtMs <= cutoff.cutoff;
+        }
+        return false;
+    }
+
+    // Thu hồi một token (logout)
+    public void revokeToken(String jti, Date expiresAt) {
+        if (jti == null || expiresAt == null || expiresAt.getTime() <= System.currentTimeMillis()) {
+            return;
+        }
+        mongoTemplate.save(TokenRevocation.builder()
+                .id(TokenRevocation.TYPE_TOKEN + ":" + jti)
+                .type(TokenRevocation.TYPE_TOKEN)
+                .subject(jti)
+                .createdAt(new Date())
+                .expiresAt(expiresAt)
+                .build());
+        applyToken(jti, expiresAt.getTime());
+    }
+
+    // Thu hồi mọi access token đã cấp cho user tính tới thời điểm hiện tại
+    public void revokeUser(String userId) {
+        Date now = new Date();
+        Date expiresAt = new Date(now.getTime() + accessTokenLifetimeMs);
+        mongoTemplate.save(TokenRevocation.builder()
+                .id(TokenRevocation.TYPE_USER + ":" + userId)
+                .type(TokenRevocation.TYPE_USER)
+                .subject(userId)
+                .cutoff(now)
+                .createdAt(now)
+                .expiresAt(expiresAt)
+                .build());
+        applyUser(userId, now.getTime(), expiresAt.getTime());
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.newEmail() == null) {
+            revokeUser(event.userId());
+        }
+    }
+
+    // Nhận bản ghi thu hồi mới từ node khác
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.sync-interval-ms:5000}")
+    public void sync() {
+        Date since = lastSyncedAt;
+        Date now = new Date();
+        List<TokenRevocation> changes = mongoTemplate.find(
+                Query.query(Criteria.where("createdAt").gte(since).and("expiresAt").gt(now)),
+                TokenRevocation.class);
+        for (TokenRevocation r : changes) {
+            if (TokenRevocation.TYPE_TOKEN.equals(r.getType())) {
+                applyToken(r.getSubject(), r.getExpiresAt().getTime());
+            } else if (TokenRevocation.TYPE_USER.equals(r.getType())) {
+                applyUser(r.getSubject(), r.getCutoff().getTime(), r.getExpiresAt().getTime());
+            }
+        }
+        // Lùi 1 giây để không lỡ bản ghi ghi cùng lúc với lần sync
+        lastSyncedAt = new Date(now.getTime() - 1000);
+    }
+
+    // Bỏ các bản ghi đã hết hạn và dựng lại Bloom filter cho gọn
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.compact-interval-ms:600000}")
+    public synchronized void compact() {
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        userCutoffs.values().removeIf(c -> c.expiresAt <= now);
+
+        BloomFilter newTokenBloom = new BloomFilter(bloomBits, bloomHashes);
+        BloomFilter newUserBloom = new BloomFilter(bloomBits, bloomHashes);
+        revokedTokens.keySet().forEach(newTokenBloom::add);
+        userCutoffs.keySet().forEach(newUserBloom::add);
+        tokenBloom = newTokenBloom;
+        userBloom = newUserBloom;
+    }
+
+    // synchronized với compact() để không bản ghi nào bị rơi khỏi filter lúc dựng lại
+    private synchronized void applyToken(String jti, long expiresAt) {
+        revokedTokens.merge(jti, expiresAt, Math::max);
+        tokenBloom.add(jti);
+    }
+
+    private synchronized void applyUser(String userId, long cutoff, long expiresAt) {
+        userCutoffs.merge(userId, new UserCutoff(cutoff, expiresAt),
+                (a, b) -> a.cutoff >= b.cutoff ? a : b);
+        userBloom.add(userId);
+    }
+
+    private record UserCutoff(long cutoff, long expiresAt) {
+    }
+}
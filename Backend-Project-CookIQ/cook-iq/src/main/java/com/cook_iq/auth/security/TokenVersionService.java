@@ -0,0 +1,80 @@
+package com.cook_iq.auth.security;
+
+import com.cook_iq.auth.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Giữ tokenVersion hiện tại của từng user trong bộ nhớ để filter JWT kiểm tra token
+ * mà không phải query Mongo mỗi request. Mỗi user chỉ đọc lại version (projection 1 field)
+ * sau mỗi app.jwt.token-version-ttl-ms, nên thay đổi trên node khác cũng có hiệu lực trong khoảng đó.
+ * Số user giữ trong cache bị chặn bởi app.jwt.token-version-max-entries (Caffeine, metric cache=users.tokenVersion).
+ */
+@Service
+public class TokenVersionService {
+
+    // Version của user đã bị xoá: không token nào khớp được
+    public static final long DELETED = -1L;
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, Long> versions;
+
+    public TokenVersionService(MongoTemplate mongoTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.jwt.token-version-ttl-ms:30000}") long ttlMillis,
+                               @Value("${app.jwt.token-version-max-entries:100000}") long maxEntries) {
+        this.mongoTemplate = mongoTemplate;
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMillis(ttlMillis))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "users.tokenVersion");
+    }
+
+    // Token còn hợp lệ khi version trong token bằng version hiện tại của user
+    public boolean isCurrent(String userId, long tokenVersion) {
+        return currentVersion(userId) == tokenVersion;
+    }
+
+    public long currentVersion(String userId) {
+        return versions.get(userId, this::loadVersion);
+    }
+
+    // Tăng version trong DB → mọi token cũ của user này hết hiệu lực
+    public long bump(String userId) {
+        User updated = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(userId)),
+                new Update().inc("tokenVersion", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                User.class);
+        long version = updated != null ? updated.getTokenVersion() : DELETED;
+        versions.put(userId, version);
+        return version;
+    }
+
+    public void markDeleted(String userId) {
+        versions.put(userId, DELETED);
+    }
+
+    private long loadVersion(String userId) {
+        Query query = Query.query(Criteria.where("_id").is(userId));
+        query.fields().include("tokenVersion");
+        User user = mongoTemplate.findOne(query, User.class);
+        if (user == null) {
+            return DELETED;
+        }
+        return user.getTokenVersion() != null ? user.getTokenVersion() : 0L;
+    }
+}
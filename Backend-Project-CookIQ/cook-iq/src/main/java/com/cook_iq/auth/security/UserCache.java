@@ -0,0 +1,63 @@
+package com.cook_iq.auth.security;
+
+import com.cook_iq.auth.event.UserChangedEvent;
+import com.cook_iq.auth.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Cache in-process cho user: theo email (UserDetails cho Spring Security) và theo id (User).
+ * Giới hạn số entry + TTL (app.user-cache.*), invalidate ngay khi có {@link UserChangedEvent}.
+ * Hit / miss / eviction được publish qua Micrometer (cache.gets, cache.evictions với tag cache=users.*).
+ */
+@Component
+public class UserCache {
+
+    private final Cache<String, UserDetails> byEmail;
+    private final Cache<String, User> byId;
+
+    public UserCache(MeterRegistry meterRegistry,
+                     @Value("${app.user-cache.max-entries:10000}") long maxEntries,
+                     @Value("${app.user-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.byEmail = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byEmail, "users.byEmail");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "users.byId");
+    }
+
+    public UserDetails getByEmail(String email, Function<String, UserDetails> loader) {
+        return byEmail.get(email, loader);
+    }
+
+    public User getById(String userId, Function<String, User> loader) {
+        return byId.get(userId, loader);
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        byId.invalidate(event.userId());
+        if (event.oldEmail() != null) {
+            byEmail.invalidate(event.oldEmail());
+        }
+        if (event.newEmail() != null) {
+            byEmail.invalidate(event.newEmail());
+        }
+    }
+}
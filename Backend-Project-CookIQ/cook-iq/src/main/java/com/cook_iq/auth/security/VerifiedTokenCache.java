@@ -0,0 +1,84 @@
+package com.cook_iq.auth.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache các JWT đã verify chữ ký, key là SHA-256 của token.
+ * Caffeine giới hạn số entry (app.jwt.cache.max-entries) và cho mỗi entry hết hạn đúng lúc token hết hạn.
+ * Lưu bản sao không sửa được của claims; mỗi lần get trả một Claims mới nên bên gọi sửa cũng không ảnh hưởng cache.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private final Cache<String, Entry> entries;
+
+    public VerifiedTokenCache(@Value("${app.jwt.cache.max-entries:10000}") int maxEntries) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxEntries, 0))
+                .expireAfter(Expiry.creating((String key, Entry entry) ->
+                        Duration.ofMillis(Math.max(entry.expiresAtMillis() - System.currentTimeMillis(), 0))))
+                .build();
+    }
+
+    // Trả về claims đã verify, hoặc null nếu chưa có / đã hết hạn
+    public Claims get(String token) {
+        Entry entry = entries.getIfPresent(digest(token));
+        return entry == null ? null : Jwts.claims(entry.claims());
+    }
+
+    public void put(String token, Claims claims) {
+        Date expiration = claims.getExpiration();
+        if (expiration == null || expiration.getTime() <= System.currentTimeMillis()) {
+            return; // Token không có exp (hoặc đã hết hạn) thì không cache
+        }
+        entries.put(digest(token), new Entry(snapshot(claims), expiration.getTime()));
+    }
+
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    public long size() {
+        entries.cleanUp();
+        return entries.estimatedSize();
+    }
+
+    // Chép claims (và các list bên trong, vd roles) sang map không sửa được
+    private static Map<String, Object> snapshot(Claims claims) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        claims.forEach((name, value) -> copy.put(name,
+                value instanceof List<?> list ? Collections.unmodifiableList(new ArrayList<>(list)) : value));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+    }
+
+    private record Entry(Map<String, Object> claims, long expiresAtMillis) {
+    }
+}
@@ -1,12 +1,16 @@
 package com.cook_iq.auth.service;
 
 import com.cook_iq.auth.dto.*;
+import com.cook_iq.auth.event.UserChangedEvent;
 import com.cook_iq.auth.model.Roles;
 import com.cook_iq.auth.model.User;
 import com.cook_iq.auth.repository.UserRepository;
-import com.cook_iq.auth.security.UserDetailsServiceImpl;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import com.cook_iq.auth.security.TokenRevocationService;
+import com.cook_iq.auth.security.TokenVersionService;
+import com.cook_iq.auth.security.UserCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -15,14 +19,25 @@ import java.time.LocalDateTime;
 public class AuthService {
     private final UserRepository userRepository;
     private final JwtService jwtService;
-    private final PasswordEncoder passwordEncoder;
-    private final UserDetailsServiceImpl userDetailsService;
+    private final PasswordHashingService passwordHashingService;
+    private final TokenVersionService tokenVersionService;
+    private final UserCache userCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
 
-    public AuthService(UserRepository userRepository, JwtService jwtService, PasswordEncoder passwordEncoder, UserDetailsServiceImpl userDetailsService) {
+    public AuthService(UserRepository userRepository, JwtService jwtService, PasswordHashingService passwordHashingService,
+                       TokenVersionService tokenVersionService, UserCache userCache,
+                       ApplicationEventPublisher eventPublisher, RefreshTokenService refreshTokenService,
+                       TokenRevocationService tokenRevocationService) {
         this.userRepository = userRepository;
         this.jwtService = jwtService;
-        this.passwordEncoder = passwordEncoder;
-        this.userDetailsService = userDetailsService;
+        this.passwordHashingService = passwordHashingService;
+        this.tokenVersionService = tokenVersionService;
+        this.userCache = userCache;
+        this.eventPublisher = eventPublisher;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     // Getter để AuthController dùng
@@ -38,7 +53,7 @@ public class AuthService {
         User user = User.builder()
                 .fullName(request.getFullName())
                 .email(request.getEmail())
-                .password(passwordEncoder.encode(request.getPassword()))
+                .password(passwordHashingService.encode(request.getPassword()))
                 .roles(Roles.USER)
                 .createdAt(LocalDateTime.now())
                 .build();
@@ -50,13 +65,12 @@ public class AuthService {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("Email không tồn tại"));
 
-        if (!passwordEncoder.matches(password, user.getPassword())) {
+        if (!passwordHashingService.matches(password, user.getPassword())) {
             throw new RuntimeException("Sai mật khẩu");
         }
-        // Tạo UserDetails từ User
-        UserDetails userDetails = userDetailsService.loadUserByUsername(user.getEmail());
-        // Tạo token từ UserDetails
-        String token = jwtService.generateToken(userDetails);
+        // Token mang sẵn userId, roles, tokenVersion nên không cần load lại UserDetails
+        String token = jwtService.generateAccessToken(user);
+        String refreshToken = refreshTokenService.issue(user);
 
         return new LoginResponse(
                 user.getId(),
@@ -65,14 +79,37 @@ public class AuthService {
                 user.getRoles(),
                 user.getAvatarUrl(),
                 user.getCreatedAt(),
-                token
+                token,
+                refreshToken
         );
     }
 
-    // Lấy thông tin user theo userId
+    // Đổi refresh token lấy access token mới: 1 lần verify HMAC + 1 lookup theo _id, không BCrypt
+    public TokenRefreshResponse refresh(String refreshToken) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+        User user = getCurrentUser(rotation.userId());
+        return new TokenRefreshResponse(jwtService.generateAccessToken(user), rotation.refreshToken());
+    }
+
+    // Thu hồi refresh token (cả family) và access token đang dùng (theo jti)
+    public void logout(String refreshToken, String accessToken) {
+        if (refreshToken != null) {
+            refreshTokenService.revoke(refreshToken);
+        }
+        if (accessToken != null) {
+            try {
+                Claims claims = jwtService.parseClaims(accessToken);
+                tokenRevocationService.revokeToken(claims.getId(), claims.getExpiration());
+            } catch (JwtException | IllegalArgumentException e) {
+                // Token hỏng / hết hạn: không cần thu hồi
+            }
+        }
+    }
+
+    // Lấy thông tin user theo userId (qua cache, không được sửa trực tiếp object trả về)
     public User getCurrentUser(String userId) {
-        return userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User không tồn tại"));
+        return userCache.getById(userId, id -> userRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("User không tồn tại")));
     }
 
     // Cập nhật Profile
@@ -87,6 +124,35 @@ public class AuthService {
             user.setAvatarUrl(req.getAvatarUrl());
         }
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        eventPublisher.publishEvent(new UserChangedEvent(userId, saved.getEmail(), saved.getEmail()));
+        return saved;
+    }
+
+    // Admin / user cập nhật thông tin cơ bản (fullName, email)
+    public User updateUser(String userId, User updatedUser) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User không tồn tại"));
+        String oldEmail = user.getEmail();
+        boolean emailChanged = updatedUser.getEmail() != null && !updatedUser.getEmail().equals(user.getEmail());
+
+        user.setFullName(updatedUser.getFullName() != null ? updatedUser.getFullName() : user.getFullName());
+        user.setEmail(updatedUser.getEmail() != null ? updatedUser.getEmail() : user.getEmail());
+        User saved = userRepository.save(user);
+
+        // Đổi email = đổi subject của token → thu hồi các token cũ
+        if (emailChanged) {
+            saved.setTokenVersion(tokenVersionService.bump(userId));
+        }
+        eventPublisher.publishEvent(new UserChangedEvent(userId, oldEmail, saved.getEmail()));
+        return saved;
+    }
+
+    // Xoá user và vô hiệu hoá ngay các token đã cấp
+    public void deleteUser(String userId) {
+        String email = userRepository.findById(userId).map(User::getEmail).orElse(null);
+        userRepository.deleteById(userId);
+        tokenVersionService.markDeleted(userId);
+        eventPublisher.publishEvent(new UserChangedEvent(userId, email, null));
     }
 }
@@ -1,23 +1,99 @@
 package com.cook_iq.auth.service;
 
+import com.cook_iq.auth.dto.CommentPage;
 import com.cook_iq.auth.dto.CreateBlogRequest;
+import com.cook_iq.auth.model.BlogCommentBucket;
 import com.cook_iq.auth.model.BlogPost;
 import com.cook_iq.auth.model.User;
 import com.cook_iq.auth.repository.BlogPostRepository;
 import com.cook_iq.auth.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import com.cook_iq.auth.dto.AddCommentRequest;
 import java.util.UUID;
+import java.util.stream.Stream;
 
+/**
+ * Comment được ghi bằng update atomic trên server (không load / save cả bài): mỗi comment có seq tăng dần,
+ * nằm trong bucket seq / app.blog.comment-bucket-size của blog_comment_buckets (lưu đầy đủ, đọc theo cursor),
+ * còn bài chỉ nhúng app.blog.recent-comments comment mới nhất ($push + $slice). Chi phí ghi không phụ thuộc
+ * độ dài thread.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class BlogService {
 
     private final BlogPostRepository blogRepo;
     private final UserRepository userRepo;
+    private final MongoTemplate mongoTemplate;
+    private final int recentComments;
+    private final int bucketSize;
+
+    public BlogService(BlogPostRepository blogRepo,
+                       UserRepository userRepo,
+                       MongoTemplate mongoTemplate,
+                       @Value("${app.blog.recent-comments:20}") int recentComments,
+                       @Value("${app.blog.comment-bucket-size:100}") int bucketSize) {
+        this.blogRepo = blogRepo;
+        this.userRepo = userRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.recentComments = recentComments;
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Chuyển comment nhúng của các bài cũ sang bucket, rồi chỉ giữ lại các comment mới nhất trong bài.
+     * Bucket có id cố định theo seq nên chạy lại sau khi bị ngắt giữa chừng vẫn cho cùng kết quả.
+     */
+    @PostConstruct
+    public void migrateComments() {
+        Query query = Query.query(Criteria.where("commentCount").exists(false));
+        query.fields().include("comments");
+        int[] migrated = {0};
+        try (Stream<BlogPost> posts = mongoTemplate.stream(query, BlogPost.class)) {
+            posts.forEach(post -> {
+                migrate(post);
+                migrated[0]++;
+            });
+        }
+        if (migrated[0] > 0) {
+            log.info("Đã chuyển comment của {} bài viết sang blog_comment_buckets", migrated[0]);
+        }
+    }
+
+    private void migrate(BlogPost post) {
+        List<BlogPost.Comment> comments = post.getComments() != null ? post.getComments() : List.of();
+        for (int i = 0; i < comments.size(); i++) {
+            comments.get(i).setSeq((long) i + 1);
+        }
+        for (int from = 0; from < comments.size(); from += bucketSize) {
+            List<BlogPost.Comment> chunk = comments.subList(from, Math.min(comments.size(), from + bucketSize));
+            long bucket = from / bucketSize;
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(bucketId(post.getId(), bucket))),
+                    new Update().set("postId", post.getId())
+                            .set("bucket", bucket)
+                            .set("count", chunk.size())
+                            .set("comments", chunk),
+                    BlogCommentBucket.class);
+        }
+        List<BlogPost.Comment> recent = comments.subList(Math.max(0, comments.size() - recentComments), comments.size());
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(post.getId()).and("commentCount").exists(false)),
+                new Update().set("comments", recent).set("commentCount", (long) comments.size()),
+                BlogPost.class);
+    }
 
     // User tạo bài
     public BlogPost createPost(CreateBlogRequest req) {
@@ -35,30 +111,37 @@ public class BlogService {
                 .authorName(author.getFullName())
                 .approved(false)
                 .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .version(0L)
+                .commentCount(0L)
                 .build();
 
         return blogRepo.save(post);
     }
 
-    // Admin duyệt bài
+    // Admin duyệt bài (update atomic: không ghi đè comment được thêm cùng lúc)
     public BlogPost approvePost(String blogId) {
-        BlogPost post = blogRepo.findById(blogId)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy bài viết"));
-
-        post.setApproved(true);
-        post.setApprovedAt(LocalDateTime.now());
-
-        return blogRepo.save(post);
+        BlogPost post = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(blogId)),
+                touch(new Update().set("approved", true).set("approvedAt", LocalDateTime.now())),
+                FindAndModifyOptions.options().returnNew(true),
+                BlogPost.class);
+        if (post == null) {
+            throw new RuntimeException("Không tìm thấy bài viết");
+        }
+        return post;
     }
 
     // Admin từ chối → XÓA khỏi DB
     public void rejectPost(String blogId) {
         blogRepo.deleteById(blogId);
+        deleteComments(blogId);
     }
 
     // Admin xóa bài đã duyệt
     public void deleteApprovedPost(String blogId) {
         blogRepo.deleteById(blogId);
+        deleteComments(blogId);
     }
 
     // Lấy danh sách bài chưa duyệt
@@ -71,24 +154,43 @@ public class BlogService {
         return blogRepo.findByApprovedTrueOrderByCreatedAtDesc();
     }
 
+    // Chỉ version + các mốc thời gian của bài đã duyệt, để kiểm tra ETag mà không load nội dung
+    public BlogPost getApprovedPostStamp(String id) {
+        Query query = Query.query(Criteria.where("_id").is(id).and("approved").is(true));
+        query.fields().include("version", "updatedAt", "approvedAt", "createdAt");
+        BlogPost stamp = mongoTemplate.findOne(query, BlogPost.class);
+        if (stamp == null) {
+            throw new RuntimeException("Post not found or not approved");
+        }
+        return stamp;
+    }
+
     public BlogPost getApprovedPostById(String id) {
         return blogRepo.findByIdAndApprovedTrue(id)
                 .orElseThrow(() -> new RuntimeException("Post not found or not approved"));
     }
 
-    // Thêm comment vào bài viết
+    // Thêm comment vào bài viết: 3 update atomic, không đọc nội dung bài cũng như các comment cũ
     public BlogPost addComment(String blogId, AddCommentRequest req) {
-        // Tìm bài viết
-        BlogPost post = blogRepo.findById(blogId)
-                .orElseThrow(() -> new RuntimeException("Bài viết không tồn tại"));
-
         // Tìm thông tin người bình luận để lấy tên hiển thị
         User commenter = userRepo.findById(req.getUserId())
                 .orElseThrow(() -> new RuntimeException("Người dùng không tồn tại"));
 
-        // Tạo comment mới
+        // Cấp seq cho comment (chỉ trả về field commentCount). Chỉ bài đã có bộ đếm: $inc trên bài chưa chuyển
+        // sang bucket (vd. node bản cũ tạo trong lúc rolling deploy) sẽ tạo commentCount = 1, bài đó không bao giờ
+        // được migrate nữa và comment mới trùng seq 1 → chuyển bài ngay rồi cấp lại
+        BlogPost counter = nextCommentSeq(blogId);
+        if (counter == null && migrateOnDemand(blogId)) {
+            counter = nextCommentSeq(blogId);
+        }
+        if (counter == null) {
+            throw new RuntimeException("Bài viết không tồn tại");
+        }
+        long seq = counter.getCommentCount();
+
         BlogPost.Comment newComment = BlogPost.Comment.builder()
                 .id(UUID.randomUUID().toString())
+                .seq(seq)
                 .userId(commenter.getId())
                 .userName(commenter.getFullName())
                 .userAvatar(commenter.getAvatarUrl())
@@ -96,13 +198,110 @@ public class BlogService {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        // Thêm vào list và lưu
-        if (post.getComments() == null) {
-            post.setComments(new java.util.ArrayList<>());
+        // Bản đầy đủ: bucket theo seq (tự tạo khi comment đầu tiên của bucket tới)
+        long bucket = (seq - 1) / bucketSize;
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(bucketId(blogId, bucket))),
+                new Update().push("comments", newComment)
+                        .inc("count", 1)
+                        .setOnInsert("postId", blogId)
+                        .setOnInsert("bucket", bucket),
+                BlogCommentBucket.class);
+
+        // Bản nhúng trong bài: chỉ giữ các comment mới nhất. Hai comment đồng thời có thể $push lệch thứ tự seq,
+        // nên sort theo seq trước khi cắt để luôn giữ đúng recentComments comment có seq lớn nhất
+        BlogPost post = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(blogId)),
+                touch(new Update().push("comments").sort(Sort.by("seq")).slice(-recentComments).each(newComment)),
+                FindAndModifyOptions.options().returnNew(true),
+                BlogPost.class);
+        if (post == null) {
+            throw new RuntimeException("Bài viết không tồn tại");
         }
-        post.getComments().add(newComment);
+        return post;
+    }
 
-        return blogRepo.save(post);
+    /**
+     * Comment của bài đã duyệt, mới nhất trước, đọc từ bucket theo seq (_id tính được nên không cần sort / skip).
+     *
+     * @param before chỉ lấy comment có seq nhỏ hơn (nextBefore của trang trước); null = từ comment mới nhất
+     */
+    public CommentPage getComments(String blogId, Long before, int limit) {
+        // Kiểm tra duyệt ở mọi trang, kể cả khi có before (bài có thể bị gỡ duyệt giữa hai lần cuộn)
+        Query query = Query.query(Criteria.where("_id").is(blogId).and("approved").is(true));
+        query.fields().include("commentCount");
+        BlogPost post = mongoTemplate.findOne(query, BlogPost.class);
+        if (post != null && post.getCommentCount() == null && migrateOnDemand(blogId)) {
+            post = mongoTemplate.findOne(query, BlogPost.class);
+        }
+        if (post == null) {
+            throw new RuntimeException("Post not found or not approved");
+        }
+        long upTo = post.getCommentCount() != null ? post.getCommentCount() : 0;
+        if (before != null) {
+            upTo = Math.min(upTo, before - 1);
+        }
+
+        List<BlogPost.Comment> page = new ArrayList<>();
+        long bucket = (upTo - 1) / bucketSize;
+        while (upTo > 0 && bucket >= 0 && page.size() < limit) {
+            // Đủ bucket cho phần còn thiếu của trang (seq có thể thủng lỗ nếu một lần ghi bucket thất bại)
+            long lowest = Math.max(0, bucket - (limit - page.size()) / bucketSize - 1);
+            List<String> ids = new ArrayList<>();
+            for (long b = bucket; b >= lowest; b--) {
+                ids.add(bucketId(blogId, b));
+            }
+            List<BlogPost.Comment> comments = new ArrayList<>();
+            mongoTemplate.find(Query.query(Criteria.where("_id").in(ids)), BlogCommentBucket.class)
+                    .forEach(b -> comments.addAll(b.getComments()));
+            long max = upTo;
+            comments.stream()
+                    .filter(c -> c.getSeq() != null && c.getSeq() <= max)
+                    .sorted(Comparator.comparing(BlogPost.Comment::getSeq).reversed())
+                    .limit(limit - page.size())
+                    .forEach(page::add);
+            bucket = lowest - 1;
+            upTo = Math.min(upTo, lowest * bucketSize);
+        }
+
+        Long nextBefore = null;
+        if (!page.isEmpty() && page.get(page.size() - 1).getSeq() > 1 && page.size() == limit) {
+            nextBefore = page.get(page.size() - 1).getSeq();
+        }
+        return new CommentPage(page, nextBefore);
     }
-}
 
+    private BlogPost nextCommentSeq(String blogId) {
+        Query query = Query.query(Criteria.where("_id").is(blogId).and("commentCount").exists(true));
+        query.fields().include("commentCount");
+        return mongoTemplate.findAndModify(query, new Update().inc("commentCount", 1),
+                FindAndModifyOptions.options().returnNew(true), BlogPost.class);
+    }
+
+    /**
+     * Chuyển comment của một bài chưa có commentCount sang bucket (như migrateComments).
+     * @return true nếu bài tồn tại và giờ đã có commentCount
+     */
+    private boolean migrateOnDemand(String blogId) {
+        Query query = Query.query(Criteria.where("_id").is(blogId).and("commentCount").exists(false));
+        query.fields().include("comments");
+        BlogPost post = mongoTemplate.findOne(query, BlogPost.class);
+        if (post == null) {
+            // Node khác vừa chuyển xong thì cấp seq lại vẫn được
+            return mongoTemplate.exists(Query.query(Criteria.where("_id").is(blogId)), BlogPost.class);
+        }
+        migrate(post);
+        return true;
+    }
+
+    private void deleteComments(String blogId) {
+        mongoTemplate.remove(Query.query(Criteria.where("postId").is(blogId)), BlogCommentBucket.class);
+    }
+
+    private String bucketId(String blogId, long bucket) {
+        return blogId + ":" + bucket;
+    }
+
+    private Update touch(Update update) {
+        return update.inc("version", 1).set("updatedAt", LocalDateTime.now());
+    }
+}
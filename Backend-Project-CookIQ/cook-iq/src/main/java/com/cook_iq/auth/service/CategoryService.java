@@ -0,0 +1,203 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.CategoryDetail;
+import com.cook_iq.auth.dto.CategoryNode;
+import com.cook_iq.auth.dto.CategoryRequest;
+import com.cook_iq.auth.event.ProductChangedEvent;
+import com.cook_iq.auth.model.Category;
+import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.repository.CategoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cây danh mục cho menu điều hướng: dựng trong bộ nhớ từ CategoryRepository kèm số sản phẩm active
+ * của từng node (tính cả danh mục con). Dựng lại lười (ở lần đọc kế tiếp) và copy-on-write:
+ * sửa danh mục / sản phẩm chỉ đánh dấu cũ, bản mới được dựng trọn rồi mới thay bản đang phục vụ.
+ * Thay đổi trên node khác có hiệu lực sau app.categories.refresh-ms.
+ */
+@Slf4j
+@Service
+public class CategoryService {
+
+    private final CategoryRepository categoryRepo;
+    private final MongoTemplate mongoTemplate;
+    private final long refreshMs;
+
+    private volatile View view;
+    private volatile boolean treeStale = true;
+    private volatile boolean countsStale = true;
+
+    public CategoryService(CategoryRepository categoryRepo,
+                           MongoTemplate mongoTemplate,
+                           @Value("${app.categories.refresh-ms:60000}") long refreshMs) {
+        this.categoryRepo = categoryRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.refreshMs = refreshMs;
+    }
+
+    public List<CategoryNode> getTree() {
+        return view().roots();
+    }
+
+    // ETag của cả cây (theo nội dung, giống nhau giữa các node)
+    public String getTreeEtag() {
+        return view().etag();
+    }
+
+    public CategoryDetail getCategory(String idOrSlug) {
+        View current = view();
+        CategoryTree.Node node = resolve(current.tree(), idOrSlug);
+        List<CategoryDetail.Breadcrumb> breadcrumbs = current.tree().ancestors(node).stream()
+                .map(n -> new CategoryDetail.Breadcrumb(n.id(), n.category().getName(), n.category().getSlug()))
+                .toList();
+        return new CategoryDetail(current.nodes().get(node.id()), breadcrumbs);
+    }
+
+    // Id của danh mục và mọi danh mục con cháu, dùng cho query sản phẩm categoryId $in
+    public List<String> getSubtreeIds(String idOrSlug) {
+        CategoryTree tree = view().tree();
+        return tree.subtree(resolve(tree, idOrSlug)).stream().map(CategoryTree.Node::id).toList();
+    }
+
+    public Category createCategory(CategoryRequest req) {
+        if (req.getParentId() != null && !categoryRepo.existsById(req.getParentId())) {
+            throw new RuntimeException("Danh mục cha không tồn tại");
+        }
+        Category category = new Category();
+        category.setName(req.getName());
+        category.setSlug(req.getSlug());
+        category.setParentId(req.getParentId());
+        category.setCreatedAt(Instant.now());
+        Category saved = categoryRepo.save(category);
+        treeStale = true;
+        return saved;
+    }
+
+    public Category updateCategory(String id, CategoryRequest req) {
+        Category category = categoryRepo.findById(id)
+                .orElseThrow(() -> new RuntimeException("Category not found"));
+        if (req.getParentId() != null) {
+            if (!categoryRepo.existsById(req.getParentId())) {
+                throw new RuntimeException("Danh mục cha không tồn tại");
+            }
+            CategoryTree tree = view().tree();
+            CategoryTree.Node node = tree.get(id);
+            boolean intoOwnSubtree = node != null && tree.subtree(node).stream()
+                    .anyMatch(n -> n.id().equals(req.getParentId()));
+            if (intoOwnSubtree) {
+                throw new RuntimeException("Không thể chuyển danh mục vào chính danh mục con của nó");
+            }
+        }
+        category.setName(req.getName());
+        category.setSlug(req.getSlug());
+        category.setParentId(req.getParentId());
+        Category saved = categoryRepo.save(category);
+        treeStale = true;
+        return saved;
+    }
+
+    public void deleteCategory(String id) {
+        if (mongoTemplate.exists(Query.query(Criteria.where("parentId").is(id)), Category.class)) {
+            throw new RuntimeException("Danh mục còn danh mục con");
+        }
+        if (mongoTemplate.exists(Query.query(Criteria.where("categoryId").is(id)), Product.class)) {
+            throw new RuntimeException("Danh mục còn sản phẩm");
+        }
+        categoryRepo.deleteById(id);
+        treeStale = true;
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        countsStale = true;
+    }
+
+    private View view() {
+        View current = view;
+        if (current != null && !treeStale && !countsStale
+                && System.currentTimeMillis() - current.loadedAt() < refreshMs) {
+            return current;
+        }
+        synchronized (this) {
+            current = view;
+            boolean expired = current == null || System.currentTimeMillis() - current.loadedAt() >= refreshMs;
+            if (!expired && !treeStale && !countsStale) {
+                return current;
+            }
+            // Bỏ cờ trước khi đọc: thay đổi xảy ra trong lúc dựng sẽ đánh dấu cũ lại
+            boolean reloadTree = expired || treeStale;
+            treeStale = false;
+            countsStale = false;
+            CategoryTree tree = reloadTree ? CategoryTree.build(categoryRepo.findAll()) : current.tree();
+            View built = render(tree, loadCounts());
+            view = built;
+            if (reloadTree) {
+                log.debug("Đã dựng lại cây {} danh mục", tree.size());
+            }
+            return built;
+        }
+    }
+
+    // Số sản phẩm active theo từng categoryId (một aggregation trên index isActive)
+    private Map<String, Long> loadCounts() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("isActive").is(true)),
+                Aggregation.group("categoryId").count().as("count"));
+        Map<String, Long> counts = new HashMap<>();
+        mongoTemplate.aggregate(aggregation, Product.class, Document.class).forEach(doc -> {
+            Object categoryId = doc.get("_id");
+            if (categoryId != null) {
+                counts.put(categoryId.toString(), ((Number) doc.get("count")).longValue());
+            }
+        });
+        return counts;
+    }
+
+    private View render(CategoryTree tree, Map<String, Long> directCounts) {
+        Map<String, Long> subtreeCounts = new HashMap<>();
+        for (CategoryTree.Node node : tree.deepestFirst()) {
+            long count = directCounts.getOrDefault(node.id(), 0L);
+            for (CategoryTree.Node child : node.children()) {
+                count += subtreeCounts.get(child.id());
+            }
+            subtreeCounts.put(node.id(), count);
+        }
+
+        Map<String, CategoryNode> nodes = new HashMap<>();
+        for (CategoryTree.Node node : tree.deepestFirst()) {
+            List<CategoryNode> children = node.children().stream().map(c -> nodes.get(c.id())).toList();
+            nodes.put(node.id(), new CategoryNode(node.id(), node.category().getName(), node.category().getSlug(),
+                    subtreeCounts.get(node.id()), children));
+        }
+        List<CategoryNode> roots = tree.roots().stream().map(r -> nodes.get(r.id())).toList();
+        return new View(tree, roots, nodes, Integer.toHexString(roots.hashCode()), System.currentTimeMillis());
+    }
+
+    private CategoryTree.Node resolve(CategoryTree tree, String idOrSlug) {
+        CategoryTree.Node node = tree.get(idOrSlug);
+        if (node == null) {
+            node = tree.getBySlug(idOrSlug);
+        }
+        if (node == null) {
+            throw new RuntimeException("Category not found");
+        }
+        return node;
+    }
+
+    private record View(CategoryTree tree, List<CategoryNode> roots, Map<String, CategoryNode> nodes,
+                        String etag, long loadedAt) {
+    }
+}
@@ -0,0 +1,158 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cây danh mục bất biến dựng từ parentId. Mỗi node có materialized path "/gốc/.../chính-nó/";
+ * các path được sort nên cây con của một danh mục là một đoạn liên tiếp (tìm bằng binary search),
+ * breadcrumb là các id trên path. parentId trỏ tới danh mục không tồn tại hoặc tạo vòng thì node thành gốc.
+ */
+final class CategoryTree {
+
+    private final Map<String, Node> byId;
+    private final Map<String, Node> bySlug;
+    private final List<Node> roots;
+    // Sort theo path
+    private final Node[] ordered;
+
+    record Node(Category category, String path, int depth, List<Node> children) {
+        String id() {
+            return category.getId();
+        }
+    }
+
+    private CategoryTree(Map<String, Node> byId, Map<String, Node> bySlug, List<Node> roots, Node[] ordered) {
+        this.byId = byId;
+        this.bySlug = bySlug;
+        this.roots = roots;
+        this.ordered = ordered;
+    }
+
+    static CategoryTree build(List<Category> categories) {
+        Map<String, Category> categoryById = new HashMap<>();
+        categories.forEach(c -> categoryById.put(c.getId(), c));
+
+        Map<String, String> paths = new HashMap<>();
+        for (Category category : categories) {
+            resolvePath(category.getId(), categoryById, paths);
+        }
+
+        Map<String, List<Node>> childrenOf = new HashMap<>();
+        Map<String, Node> byId = new HashMap<>();
+        Map<String, Node> bySlug = new HashMap<>();
+        List<Node> roots = new ArrayList<>();
+        for (Category category : categories) {
+            String path = paths.get(category.getId());
+            int depth = (int) path.chars().filter(c -> c == '/').count() - 2;
+            Node node = new Node(category, path, depth,
+                    childrenOf.computeIfAbsent(category.getId(), k -> new ArrayList<>()));
+            byId.put(category.getId(), node);
+            if (category.getSlug() != null) {
+                bySlug.put(category.getSlug(), node);
+            }
+            if (depth == 0) {
+                roots.add(node);
+            } else {
+                childrenOf.computeIfAbsent(category.getParentId(), k -> new ArrayList<>()).add(node);
+            }
+        }
+
+        Comparator<Node> byName = Comparator.comparing((Node n) -> n.category().getName(),
+                Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(Node::id);
+        childrenOf.values().forEach(children -> children.sort(byName));
+        roots.sort(byName);
+
+        Node[] ordered = byId.values().toArray(new Node[0]);
+        Arrays.sort(ordered, Comparator.comparing(Node::path));
+        return new CategoryTree(byId, bySlug, Collections.unmodifiableList(roots), ordered);
+    }
+
+    // Đi ngược lên theo parentId tới node đã biết path hoặc tới gốc, rồi gán path cho cả đoạn vừa đi
+    private static void resolvePath(String id, Map<String, Category> categoryById, Map<String, String> paths) {
+        List<String> chain = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        String current = id;
+        String base = "/";
+        while (current != null && !paths.containsKey(current) && seen.add(current)) {
+            chain.add(current);
+            Category category = categoryById.get(current);
+            String parentId = category.getParentId();
+            current = parentId != null && categoryById.containsKey(parentId) ? parentId : null;
+        }
+        if (current != null && paths.containsKey(current)) {
+            base = paths.get(current);
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            base = base + chain.get(i) + "/";
+            paths.put(chain.get(i), base);
+        }
+    }
+
+    Node get(String id) {
+        return byId.get(id);
+    }
+
+    Node getBySlug(String slug) {
+        return bySlug.get(slug);
+    }
+
+    List<Node> roots() {
+        return roots;
+    }
+
+    int size() {
+        return ordered.length;
+    }
+
+    // Danh mục và mọi danh mục con cháu (đoạn path bắt đầu bằng path của nó)
+    List<Node> subtree(Node node) {
+        int from = lowerBound(node.path());
+        List<Node> result = new ArrayList<>();
+        for (int i = from; i < ordered.length && ordered[i].path().startsWith(node.path()); i++) {
+            result.add(ordered[i]);
+        }
+        return result;
+    }
+
+    // Từ gốc tới chính node
+    List<Node> ancestors(Node node) {
+        List<Node> result = new ArrayList<>();
+        for (String id : node.path().split("/")) {
+            if (!id.isEmpty()) {
+                result.add(byId.get(id));
+            }
+        }
+        return result;
+    }
+
+    // Node sâu nhất trước: cộng dồn từ lá lên gốc chỉ cần một lượt
+    List<Node> deepestFirst() {
+        List<Node> result = new ArrayList<>(Arrays.asList(ordered));
+        result.sort(Comparator.comparingInt(Node::depth).reversed());
+        return result;
+    }
+
+    private int lowerBound(String path) {
+        int lo = 0;
+        int hi = ordered.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ordered[mid].path().compareTo(path) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
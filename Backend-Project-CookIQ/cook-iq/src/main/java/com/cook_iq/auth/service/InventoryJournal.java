@@ -0,0 +1,166 @@
+package com.cook_iq.auth.service;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Journal ghi-trước cho InventoryLedger: mỗi dòng "productId seq delta".
+ * Chia stripe theo productId, mỗi stripe có khoá và file riêng nên các SKU khác stripe ghi song song;
+ * một sản phẩm luôn nằm trên cùng một stripe nên thứ tự seq của nó vẫn được giữ.
+ * Mỗi stripe chia thành các segment; segment cũ được xoá sau khi mọi delta trong đó đã flush xuống Mongo.
+ * Ghi không fsync: chịu được process crash (dữ liệu đã nằm trong page cache của OS), không chịu mất điện.
+ */
+class InventoryJournal {
+
+    private static final String PREFIX = "inventory-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final Stripe[] stripes;
+    private final AtomicLong segmentCounter = new AtomicLong();
+
+    InventoryJournal(Path directory, int stripeCount) {
+        this.directory = directory;
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i);
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không tạo được thư mục journal " + directory, e);
+        }
+    }
+
+    record Entry(String productId, long seq, int delta) {
+    }
+
+    // Đọc toàn bộ các segment còn lại (sau crash)
+    List<Entry> readAll() {
+        List<Entry> entries = new ArrayList<>();
+        for (Path segment : segments()) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ");
+                    if (parts.length != 3) {
+                        continue; // Dòng ghi dở lúc crash
+                    }
+                    entries.add(new Entry(parts[0], Long.parseLong(parts[1]), Integer.parseInt(parts[2])));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không đọc được journal " + segment, e);
+            }
+        }
+        return entries;
+    }
+
+    void append(String productId, long seq, int delta) {
+        byte[] line = (productId + " " + seq + " " + delta + "\n").getBytes(StandardCharsets.UTF_8);
+        Stripe stripe = stripes[Math.floorMod(productId.hashCode(), stripes.length)];
+        synchronized (stripe) {
+            try {
+                if (stripe.current == null) {
+                    stripe.openNewSegment();
+                }
+                stripe.current.write(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không ghi được journal tồn kho", e);
+            }
+        }
+    }
+
+    /**
+     * Đóng segment hiện tại của mọi stripe, các lần append sau ghi vào segment mới.
+     * @return danh sách segment đã đóng (xoá được sau khi flush thành công)
+     */
+    List<Path> roll() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.closeCurrent();
+            }
+        }
+        return segments();
+    }
+
+    void delete(List<Path> closedSegments) {
+        Set<Path> open = new HashSet<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.currentPath != null) {
+                    open.add(stripe.currentPath);
+                }
+            }
+        }
+        for (Path segment : closedSegments) {
+            if (!open.contains(segment)) {
+                try {
+                    Files.deleteIfExists(segment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Không xoá được journal " + segment, e);
+                }
+            }
+        }
+    }
+
+    void close() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.closeCurrent();
+            }
+        }
+    }
+
+    // Thứ tự segment không ảnh hưởng khôi phục (delta được cộng theo seq của từng sản phẩm)
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không liệt kê được journal", e);
+        }
+    }
+
+    // Các field được bảo vệ bởi synchronized (stripe)
+    private final class Stripe {
+        final int index;
+        OutputStream current;
+        Path currentPath;
+
+        Stripe(int index) {
+            this.index = index;
+        }
+
+        void openNewSegment() throws IOException {
+            currentPath = directory.resolve(PREFIX + System.currentTimeMillis() + "-"
+                    + segmentCounter.getAndIncrement() + "-s" + index + SUFFIX);
+            current = new FileOutputStream(currentPath.toFile(), true);
+        }
+
+        void closeCurrent() {
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Không đóng được journal", e);
+                }
+                current = null;
+                currentPath = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+/**
+ * Sổ tồn kho trong bộ nhớ cho các sản phẩm flash sale (app.inventory.hot-products).
+ * Giữ chỗ chỉ khoá riêng từng SKU, không chạm Mongo; delta ròng được ghi xuống Mongo
+ * sau mỗi app.inventory.flush-interval-ms (write-behind).
+ * Mỗi thay đổi được ghi vào journal trước; khi khởi động lại, các delta chưa flush
+ * (seq > Product.ledgerSeq) được áp lại từ journal nên không mất giữ chỗ và không bán vượt.
+ */
+@Slf4j
+@Service
+public class InventoryLedger {
+
+    private final MongoTemplate mongoTemplate;
+    private final Set<String> hotProductIds;
+    private final InventoryJournal journal;
+    private final Map<String, HotSku> skus = new ConcurrentHashMap<>();
+    private final Counter reservedCounter;
+    private final Counter rejectedCounter;
+
+    public InventoryLedger(MongoTemplate mongoTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.inventory.hot-products:}") Set<String> hotProductIds,
+                           @Value("${app.inventory.journal-dir:data/inventory-journal}") String journalDir,
+                           @Value("${app.inventory.journal-stripes:8}") int journalStripes) {
+        this.mongoTemplate = mongoTemplate;
+        this.hotProductIds = hotProductIds;
+        this.journal = new InventoryJournal(Paths.get(journalDir), journalStripes);
+        this.reservedCounter = meterRegistry.counter("inventory.ledger.reservations", "result", "ok");
+        this.rejectedCounter = meterRegistry.counter("inventory.ledger.reservations", "result", "rejected");
+        Gauge.builder("inventory.ledger.skus", skus, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        recover();
+        for (String productId : hotProductIds) {
+            if (productId.isBlank()) {
+                continue;
+            }
+            Product product = mongoTemplate.findById(productId, Product.class);
+            if (product == null) {
+                log.warn("Sản phẩm hot {} không tồn tại, bỏ qua", productId);
+                continue;
+            }
+            long seq = product.getLedgerSeq() != null ? product.getLedgerSeq() : 0L;
+            skus.put(productId, new HotSku(productId, product.getStockQuantity(), seq));
+        }
+        if (!skus.isEmpty()) {
+            log.info("InventoryLedger quản lý {} sản phẩm hot", skus.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        journal.close();
+    }
+
+    public boolean isHot(String productId) {
+        return skus.containsKey(productId);
+    }
+
+    public Set<String> hotProductIds() {
+        return Collections.unmodifiableSet(skus.keySet());
+    }
+
+    // Tồn kho hiện tại trong bộ nhớ (null nếu không phải sản phẩm hot)
+    public Integer available(String productId) {
+        HotSku sku = skus.get(productId);
+        if (sku == null) {
+            return null;
+        }
+        synchronized (sku) {
+            return sku.available;
+        }
+    }
+
+    // Giữ chỗ quantity đơn vị; false nếu không đủ hàng
+    public boolean reserve(String productId, int quantity) {
+        HotSku sku = skus.get(productId);
+        synchronized (sku) {
+            if (sku.available < quantity) {
+                rejectedCounter.increment();
+                return false;
+            }
+            sku.apply(-quantity, journal);
+        }
+        reservedCounter.increment();
+        return true;
+    }
+
+    // Trả lại hàng đã giữ chỗ (đơn lỗi / huỷ)
+    public void release(String productId, int quantity) {
+        HotSku sku = skus.get(productId);
+        synchronized (sku) {
+            sku.apply(quantity, journal);
+        }
+    }
+
+    // Nhập / xuất kho thủ công (ProductService.updateStock); không cho âm giống logic cũ
+    public int adjust(String productId, int delta) {
+        HotSku sku = skus.get(productId);
+        synchronized (sku) {
+            int applied = Math.max(0, sku.available + delta) - sku.available;
+            if (applied != 0) {
+                sku.apply(applied, journal);
+            }
+            return sku.available;
+        }
+    }
+
+    /**
+     * Admin ghi đè tồn kho tuyệt đối (ProductService.updateProduct).
+     * {@code write} nhận seq mà document phải mang (ledgerSeq) để journal cũ không bị áp lại, và chạy khi vẫn giữ
+     * flushLock + khoá SKU: không lần flush nào chen $inc vào giữa, ledgerSeq không lùi.
+     * Bộ nhớ chỉ bị ghi đè khi write thành công.
+     */
+    public <T> T overwrite(String productId, int stock, LongFunction<T> write) {
+        HotSku sku = skus.get(productId);
+        sku.flushLock.lock();
+        try {
+            synchronized (sku) {
+                T result = write.apply(sku.seq);
+                sku.available = stock;
+                sku.pending = 0;
+                sku.unconfirmedDelta = 0;
+                sku.flushedSeq = sku.seq;
+                return result;
+            }
+        } finally {
+            sku.flushLock.unlock();
+        }
+    }
+
+    // Ghi delta ròng xuống Mongo; segment journal cũ chỉ bị xoá khi mọi SKU đã flush thành công
+    @Scheduled(fixedDelayString = "${app.inventory.flush-interval-ms:200}")
+    public void flush() {
+        if (skus.isEmpty()) {
+            return;
+        }
+        List<Path> closedSegments = journal.roll();
+        boolean allFlushed = true;
+        for (HotSku sku : skus.values()) {
+            allFlushed &= flush(sku);
+        }
+        if (allFlushed) {
+            journal.delete(closedSegments);
+        }
+    }
+
+    private boolean flush(HotSku sku) {
+        sku.flushLock.lock();
+        try {
+            int delta;
+            long upTo;
+            synchronized (sku) {
+                delta = sku.pending;
+                upTo = sku.seq;
+                sku.pending = 0;
+            }
+            // Lần flush trước lỗi không rõ đã ghi hay chưa: hỏi lại ledgerSeq trên Mongo
+            if (sku.unconfirmedSeq > sku.flushedSeq) {
+                if (loadLedgerSeq(sku.productId) >= sku.unconfirmedSeq) {
+                    sku.flushedSeq = sku.unconfirmedSeq;
+                } else {
+                    delta += sku.unconfirmedDelta;
+                }
+                sku.unconfirmedDelta = 0;
+            }
+            if (upTo == sku.flushedSeq) {
+                return true;
+            }
+            try {
+                applyToMongo(sku.productId, delta, upTo);
+                sku.flushedSeq = upTo;
+                return true;
+            } catch (RuntimeException e) {
+                sku.unconfirmedDelta = delta;
+                sku.unconfirmedSeq = upTo;
+                log.warn("Flush tồn kho {} thất bại, sẽ thử lại: {}", sku.productId, e.getMessage());
+                return false;
+            }
+        } finally {
+            sku.flushLock.unlock();
+        }
+    }
+
+    // Áp lại các delta trong journal mà Mongo chưa có (seq > ledgerSeq của từng sản phẩm)
+    private void recover() {
+        List<InventoryJournal.Entry> entries = journal.readAll();
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<String, Long> ledgerSeqs = new HashMap<>();
+        Map<String, Integer> deltas = new HashMap<>();
+        Map<String, Long> maxSeqs = new HashMap<>();
+        for (InventoryJournal.Entry entry : entries) {
+            long flushed = ledgerSeqs.computeIfAbsent(entry.productId(), this::loadLedgerSeq);
+            if (entry.seq() > flushed) {
+                deltas.merge(entry.productId(), entry.delta(), Integer::sum);
+                maxSeqs.merge(entry.productId(), entry.seq(), Math::max);
+            }
+        }
+        maxSeqs.forEach((productId, seq) -> applyToMongo(productId, deltas.get(productId), seq));
+        journal.delete(journal.roll());
+        log.info("Khôi phục tồn kho từ journal: {} sản phẩm", maxSeqs.size());
+    }
+
+    // Điều kiện ledgerSeq < upTo để một delta không bao giờ bị cộng hai lần
+    private void applyToMongo(String productId, int delta, long upTo) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(productId).orOperator(
+                        Criteria.where("ledgerSeq").lt(upTo),
+                        Criteria.where("ledgerSeq").exists(false))),
+                new Update().inc("stockQuantity", delta)
+                        .set("ledgerSeq", upTo)
+                        .set("updatedAt", Instant.now()),
+                Product.class);
+    }
+
+    private long loadLedgerSeq(String productId) {
+        Query query = Query.query(Criteria.where("_id").is(productId));
+        query.fields().include("ledgerSeq");
+        Product product = mongoTemplate.findOne(query, Product.class);
+        return product != null && product.getLedgerSeq() != null ? product.getLedgerSeq() : 0L;
+    }
+
+    private static final class HotSku {
+        final String productId;
+        final ReentrantLock flushLock = new ReentrantLock();
+
+        // Các field dưới được bảo vệ bởi synchronized (this)
+        int available;
+        int pending;
+        long seq;
+
+        // Chỉ truy cập khi giữ flushLock
+        long flushedSeq;
+        int unconfirmedDelta;
+        long unconfirmedSeq;
+
+        HotSku(String productId, int available, long seq) {
+            this.productId = productId;
+            this.available = available;
+            this.seq = seq;
+            this.flushedSeq = seq;
+        }
+
+        // Ghi journal trong lúc giữ lock SKU: delta nào đã vào journal thì chắc chắn nằm trong pending
+        void apply(int delta, InventoryJournal journal) {
+            seq++;
+            journal.append(productId, seq, delta);
+            available += delta;
+            pending += delta;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.cook_iq.auth.service;
 
 
+import com.cook_iq.auth.model.User;
+import com.cook_iq.auth.security.VerifiedTokenCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -14,22 +18,58 @@ import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 @Service
 public class JwtService {
 
+    // Tên các claim dùng cho chế độ stateless (filter dựng Authentication từ token, không query DB)
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLES = "roles";
+    public static final String CLAIM_TOKEN_VERSION = "tv";
+    public static final String CLAIM_FULL_NAME = "name";
+    public static final String CLAIM_AVATAR = "avatar";
+    public static final String CLAIM_TYPE = "typ";
+    public static final String CLAIM_FAMILY = "fam";
+    public static final String TYPE_REFRESH = "refresh";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
     @Value("${app.jwt.expiration}")
     private Long jwtExpirationMs; // in milliseconds
 
+    @Value("${app.jwt.refresh-expiration:1209600000}")
+    private Long refreshExpirationMs; // mặc định 14 ngày
+
     private Key signingKey;
+    private JwtParser jwtParser;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    public JwtService(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
 
-    // ✅ Tạo key một lần khi khởi động app
+    // ✅ Tạo key và parser một lần khi khởi động app (JwtParser là immutable, dùng chung được)
     @PostConstruct
     public void init() {
         signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+
+    // ✅ Parse + verify chữ ký đúng một lần, các bước sau dùng lại Claims này.
+    // Token đã verify được cache theo digest nên request lặp lại với cùng token không phải verify HMAC nữa.
+    public Claims parseClaims(String token) {
+        Claims cached = verifiedTokenCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        verifiedTokenCache.put(token, claims);
+        return claims;
     }
 
     // ✅ Tạo JWT token
@@ -45,20 +85,41 @@ public class JwtService {
                 .compact();
     }
 
+    // ✅ Tạo access token mang sẵn userId, roles, tokenVersion, tên và avatar của user
+    public String generateAccessToken(User user) {
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + jwtExpirationMs);
+
+        Claims claims = Jwts.claims().setSubject(user.getEmail());
+        claims.setId(UUID.randomUUID().toString()); // jti, dùng để thu hồi từng token
+        claims.put(CLAIM_USER_ID, user.getId());
+        claims.put(CLAIM_ROLES, List.of("ROLE_" + user.getRoles().name()));
+        claims.put(CLAIM_TOKEN_VERSION, user.getTokenVersion() != null ? user.getTokenVersion() : 0L);
+        claims.put(CLAIM_FULL_NAME, user.getFullName());
+        claims.put(CLAIM_AVATAR, user.getAvatarUrl());
+
+        return Jwts.builder()
+                .setClaims(claims)
+                .setIssuedAt(now)
+                .setExpiration(expiryDate)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
+                .compact();
+    }
+
     // ✅ Trích xuất username từ token
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return parseClaims(token).getSubject();
     }
 
     // ✅ Kiểm tra token có hợp lệ không
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return username.equals(userDetails.getUsername()) && !isTokenExpired(token);
+        return isTokenValid(parseClaims(token), userDetails);
+    }
+
+    // ✅ Kiểm tra trên Claims đã parse sẵn (không parse lại token)
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername())
+                && claims.getExpiration().after(new Date());
     }
 
     // ✅ Kiểm tra token hết hạn chưa
@@ -68,12 +129,7 @@ public class JwtService {
 
     // ✅ Trích xuất ngày hết hạn
     public Date extractExpiration(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getExpiration();
+        return parseClaims(token).getExpiration();
     }
 
     // ===================================================================
@@ -106,11 +162,7 @@ public class JwtService {
 
     //Dùng để kiểm tra quyền user hoặc admin.
     public List<String> extractRoles(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = parseClaims(token);
         return (List<String>) claims.get("roles");
     }
 
@@ -129,19 +181,40 @@ public class JwtService {
                 .compact();
     }
 
-    //Refresh token
-    public String generateRefreshToken(UserDetails userDetails) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpirationMs * 1); // ví dụ 7 ngày
+    //Refresh token: sống lâu, chỉ dùng được một lần (xoay vòng trong cùng family)
+    public String generateRefreshToken(String userId, long tokenVersion, String familyId, String tokenId, Date expiryDate) {
+        Claims claims = Jwts.claims();
+        claims.setId(tokenId);
+        claims.put(CLAIM_TYPE, TYPE_REFRESH);
+        claims.put(CLAIM_USER_ID, userId);
+        claims.put(CLAIM_FAMILY, familyId);
+        claims.put(CLAIM_TOKEN_VERSION, tokenVersion);
 
         return Jwts.builder()
-                .setSubject(userDetails.getUsername())
-                .setIssuedAt(now)
+                .setClaims(claims)
+                .setIssuedAt(new Date())
                 .setExpiration(expiryDate)
                 .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    public Date nextRefreshExpiry() {
+        return new Date(System.currentTimeMillis() + refreshExpirationMs);
+    }
+
+    // Refresh token chỉ dùng một lần nên không đi qua VerifiedTokenCache
+    public Claims parseRefreshClaims(String token) {
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        if (!TYPE_REFRESH.equals(claims.get(CLAIM_TYPE))) {
+            throw new JwtException("Không phải refresh token");
+        }
+        return claims;
+    }
+
+    public boolean isRefreshToken(Claims claims) {
+        return TYPE_REFRESH.equals(claims.get(CLAIM_TYPE));
+    }
+
     //kiểm tra role trong token
     public boolean hasRole(String token, String role) {
         List<String> roles = extractRoles(token);
@@ -0,0 +1,102 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Xuất đơn hàng cho kế toán: đọc bằng cursor Mongo (từng lô cursorBatchSize) và ghi thẳng ra response,
+ * mỗi đơn một dòng NDJSON hoặc CSV. Bộ nhớ không phụ thuộc số đơn; client đọc chậm thì write bị chặn
+ * và cursor cũng dừng lấy lô mới (backpressure tự nhiên của socket).
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderExportService {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final int CURSOR_BATCH_SIZE = 500;
+    private static final String CSV_HEADER =
+            "id,createdAt,userId,customerName,phone,address,paymentMethod,status,totalAmount,items\n";
+
+    private final MongoTemplate mongoTemplate;
+    private final OrderQueryService orderQueryService;
+    private final ObjectMapper objectMapper;
+
+    public static boolean isSupported(String format) {
+        return FORMAT_NDJSON.equals(format) || FORMAT_CSV.equals(format);
+    }
+
+    public void export(OutputStream out, String format, OrderStatus status,
+                       LocalDateTime from, LocalDateTime to) throws IOException {
+        List<Criteria> criteria = orderQueryService.filter(null, status, from, to);
+        Query query = new Query(criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"))
+                .cursorBatchSize(CURSOR_BATCH_SIZE);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        boolean csv = FORMAT_CSV.equals(format);
+        if (csv) {
+            writer.write(CSV_HEADER);
+        }
+        try (Stream<Order> orders = mongoTemplate.stream(query, Order.class)) {
+            for (Order order : (Iterable<Order>) orders::iterator) {
+                if (csv) {
+                    writeCsv(writer, order);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(order));
+                    writer.write('\n');
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeCsv(Writer writer, Order order) throws IOException {
+        String items = order.getItems() == null ? "" : order.getItems().stream()
+                .map(item -> item.getProductId() + " x" + item.getQuantity() + " @" + item.getPrice())
+                .collect(Collectors.joining("; "));
+        writer.write(String.join(",",
+                csv(order.getId()),
+                csv(order.getCreatedAt()),
+                csv(order.getUserId()),
+                csv(order.getCustomerName()),
+                csv(order.getPhone()),
+                csv(order.getAddress()),
+                csv(order.getPaymentMethod()),
+                csv(order.getStatus()),
+                csv(order.getTotalAmount()),
+                csv(items)));
+        writer.write('\n');
+    }
+
+    // RFC 4180: bọc trong ngoặc kép khi có dấu phẩy / ngoặc kép / xuống dòng
+    private String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String s = value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,329 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.CreateOrderRequest;
+import com.cook_iq.auth.exception.TooManyRequestsException;
+import com.cook_iq.auth.model.IdempotencyRecord;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import com.cook_iq.auth.repository.OrderRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nhận đơn hàng bất đồng bộ: request thread chỉ kiểm tra giỏ hàng, gán id rồi đưa đơn vào hàng đợi có giới hạn;
+ * một writer thread gom các đơn trong hàng đợi, giữ chỗ tồn kho từng đơn và insert cả lô bằng một lệnh.
+ * Idempotency-Key (theo user) được ghi vào idempotency_keys trước khi nhận đơn, nên client gửi lại
+ * cùng key trong thời gian lưu giữ sẽ nhận lại đúng đơn cũ mà không tạo đơn mới.
+ */
+@Slf4j
+@Service
+public class OrderIngestionService {
+
+    private final OrderService orderService;
+    private final OrderRepository orderRepo;
+    private final MongoTemplate mongoTemplate;
+    private final BlockingQueue<Order> queue;
+    private final int batchSize;
+    private final long idempotencyTtlMs;
+    private final long idempotencyGraceMs;
+    private final long retryAfterSeconds;
+    private final DistributionSummary batchSizes;
+
+    // Đơn đã nhận nhưng chưa insert xong (để trả về cho request trùng key và /my-orders)
+    private final Map<String, Order> inFlight = new ConcurrentHashMap<>();
+
+    private Thread writer;
+    private volatile boolean running = true;
+
+    public OrderIngestionService(OrderService orderService,
+                                 OrderRepository orderRepo,
+                                 MongoTemplate mongoTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.orders.ingest.queue-capacity:1024}") int queueCapacity,
+                                 @Value("${app.orders.ingest.batch-size:64}") int batchSize,
+                                 @Value("${app.orders.idempotency-ttl-hours:24}") long idempotencyTtlHours,
+                                 @Value("${app.orders.ingest.retry-after-seconds:1}") long retryAfterSeconds,
+                                 @Value("${app.orders.idempotency-grace-ms:60000}") long idempotencyGraceMs) {
+        this.orderService = orderService;
+        this.orderRepo = orderRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.idempotencyTtlMs = TimeUnit.HOURS.toMillis(idempotencyTtlHours);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.idempotencyGraceMs = idempotencyGraceMs;
+        this.batchSizes = meterRegistry.summary("orders.ingest.batch.size");
+        Gauge.builder("orders.ingest.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        mongoTemplate.indexOps(IdempotencyRecord.class)
+                .createIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(0));
+        mongoTemplate.indexOps(IdempotencyRecord.class)
+                .createIndex(new Index().on("orderId", Sort.Direction.ASC));
+        writer = new Thread(this::runWriter, "order-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Xử lý nốt các đơn đã nhận trước khi tắt
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    // Tạo đơn đồng bộ như /create cũ, thêm chống trùng theo Idempotency-Key
+    public Order createOrder(String userId, String idempotencyKey, CreateOrderRequest req) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return orderService.createOrder(userId, req);
+        }
+        Order existing = findExisting(userId, idempotencyKey);
+        if (existing != null) {
+            return existing;
+        }
+        Order order = orderService.buildOrder(userId, req);
+        existing = claim(userId, idempotencyKey, order);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            String reservationId = orderService.reserveStock(order);
+            try {
+                orderRepo.insert(order);
+            } catch (RuntimeException e) {
+                orderService.releaseStock(order, reservationId);
+                throw e;
+            }
+            orderService.clearReservation(order, reservationId);
+            orderService.onOrderCreated(order);
+            return order;
+        } catch (RuntimeException e) {
+            // Đơn không tạo được → key được dùng lại để thử lại
+            unclaim(order);
+            throw e;
+        } finally {
+            inFlight.remove(order.getId());
+        }
+    }
+
+    /**
+     * Nhận đơn vào hàng đợi và trả về ngay (status PENDING, id đã gán).
+     * Đơn không giữ được tồn kho (hoặc không lưu được) khi writer xử lý sẽ được lưu với status CANCELLED + cancelReason.
+     */
+    public Order submitOrder(String userId, String idempotencyKey, CreateOrderRequest req) {
+        boolean keyed = idempotencyKey != null && !idempotencyKey.isBlank();
+        if (keyed) {
+            Order existing = findExisting(userId, idempotencyKey);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        Order order = orderService.buildOrder(userId, req);
+        if (keyed) {
+            Order existing = claim(userId, idempotencyKey, order);
+            if (existing != null) {
+                return existing;
+            }
+        } else {
+            inFlight.put(order.getId(), order);
+        }
+        if (!queue.offer(order)) {
+            inFlight.remove(order.getId());
+            if (keyed) {
+                unclaim(order);
+            }
+            throw new TooManyRequestsException("Hệ thống đang nhận quá nhiều đơn, vui lòng thử lại sau", retryAfterSeconds);
+        }
+        return order;
+    }
+
+    // Đơn của user, kể cả đơn vừa nhận còn nằm trong hàng đợi
+    public List<Order> getUserOrders(String userId) {
+        Map<String, Order> orders = new LinkedHashMap<>();
+        inFlight.values().stream()
+                .filter(o -> userId.equals(o.getUserId()))
+                .sorted(Comparator.comparing(Order::getCreatedAt).reversed())
+                .forEach(o -> orders.put(o.getId(), o));
+        orderService.getUserOrders(userId).forEach(o -> orders.put(o.getId(), o));
+        return new ArrayList<>(orders.values());
+    }
+
+    /**
+     * Ghi key trước khi làm bất cứ việc gì. Đơn được đưa vào inFlight trước khi ghi key,
+     * nên request trùng key đến ngay sau vẫn tìm thấy đơn.
+     * @return đơn đã tạo trước đó với cùng key, hoặc null nếu key mới
+     */
+    private Order claim(String userId, String idempotencyKey, Order order) {
+        inFlight.put(order.getId(), order);
+        Date now = new Date();
+        try {
+            mongoTemplate.insert(IdempotencyRecord.builder()
+                    .id(recordId(userId, idempotencyKey))
+                    .orderId(order.getId())
+                    .createdAt(now)
+                    .expiresAt(new Date(now.getTime() + idempotencyTtlMs))
+                    .build());
+            return null;
+        } catch (DuplicateKeyException e) {
+            inFlight.remove(order.getId());
+            Order existing = findExisting(userId, idempotencyKey);
+            // null: key vừa bị giải phóng (đơn trước lỗi) → thử nhận lại
+            return existing != null ? existing : claim(userId, idempotencyKey, order);
+        }
+    }
+
+    /**
+     * Tra key trước khi kiểm tra giỏ hàng: request gửi lại phải nhận đúng đơn cũ,
+     * kể cả khi tồn kho đã hết (có thể chính vì đơn đó).
+     * Key được ghi trước khi đơn được lưu: nếu process chết khi đơn còn trong hàng đợi thì key trỏ tới đơn
+     * không bao giờ tồn tại. Quá app.orders.idempotency-grace-ms mà vẫn không thấy đơn thì key được nhận lại.
+     * @return đơn đã tạo với key này, hoặc null nếu key chưa được dùng (hoặc vừa được giải phóng)
+     */
+    private Order findExisting(String userId, String idempotencyKey) {
+        IdempotencyRecord record = mongoTemplate.findById(recordId(userId, idempotencyKey), IdempotencyRecord.class);
+        if (record == null) {
+            return null;
+        }
+        Order existing = inFlight.get(record.getOrderId());
+        if (existing != null) {
+            return existing;
+        }
+        existing = orderRepo.findById(record.getOrderId()).orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+        if (record.getCreatedAt() != null
+                && System.currentTimeMillis() - record.getCreatedAt().getTime() < idempotencyGraceMs) {
+            throw new TooManyRequestsException("Đơn hàng với Idempotency-Key này đang được xử lý, vui lòng thử lại sau",
+                    retryAfterSeconds);
+        }
+        // Xoá có điều kiện orderId: request khác đã nhận lại key trước thì không xoá nhầm key mới
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(record.getId()).and("orderId").is(record.getOrderId())),
+                IdempotencyRecord.class);
+        log.warn("Giải phóng Idempotency-Key {}: đơn {} không được lưu", record.getId(), record.getOrderId());
+        return null;
+    }
+
+    // Giải phóng key của một đơn không tạo được để client thử lại với cùng key
+    private void unclaim(Order order) {
+        mongoTemplate.remove(Query.query(Criteria.where("orderId").is(order.getId())), IdempotencyRecord.class);
+    }
+
+    private String recordId(String userId, String idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    private void runWriter() {
+        List<Order> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Order first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ghi lô {} đơn hàng thất bại", batch.size(), e);
+            } finally {
+                batch.forEach(o -> inFlight.remove(o.getId()));
+                batch.clear();
+            }
+        }
+    }
+
+    // Group commit: giữ chỗ từng đơn, sau đó một insertAll cho cả lô
+    private void writeBatch(List<Order> batch) {
+        Map<Order, String> reservations = new LinkedHashMap<>();
+        for (Order order : batch) {
+            try {
+                reservations.put(order, orderService.reserveStock(order));
+            } catch (RuntimeException e) {
+                order.setStatus(OrderStatus.CANCELLED);
+                order.setCancelReason(e.getMessage());
+                order.setUpdatedAt(LocalDateTime.now());
+            }
+        }
+
+        List<Order> saved = batch;
+        try {
+            mongoTemplate.insertAll(batch);
+        } catch (RuntimeException e) {
+            log.error("insertAll lô {} đơn hàng thất bại, xử lý lại từng đơn", batch.size(), e);
+            saved = recoverBatch(batch, reservations);
+        }
+        for (Order order : saved) {
+            String reservationId = reservations.get(order);
+            if (reservationId != null) {
+                orderService.clearReservation(order, reservationId);
+            }
+        }
+        saved.forEach(orderService::onOrderCreated);
+        batchSizes.record(batch.size());
+    }
+
+    /**
+     * insertAll dừng ở document lỗi: các đơn phía trước đã được lưu. Phần còn lại được hoàn kho và lưu lại
+     * từng đơn với status CANCELLED + cancelReason: client đã nhận id đơn (202) nên phải thấy kết quả
+     * trong /my-orders và khi gửi lại cùng Idempotency-Key.
+     * @return các đơn đã có trong Mongo (lưu bình thường hoặc lưu dạng đã huỷ)
+     */
+    private List<Order> recoverBatch(List<Order> batch, Map<Order, String> reservations) {
+        Set<String> savedIds = new HashSet<>();
+        orderRepo.findAllById(batch.stream().map(Order::getId).toList()).forEach(o -> savedIds.add(o.getId()));
+        List<Order> saved = new ArrayList<>();
+        for (Order order : batch) {
+            if (savedIds.contains(order.getId())) {
+                saved.add(order);
+                continue;
+            }
+            String reservationId = reservations.remove(order);
+            if (reservationId != null) {
+                orderService.releaseStock(order, reservationId);
+            }
+            order.setStatus(OrderStatus.CANCELLED);
+            order.setCancelReason("Không lưu được đơn hàng, vui lòng đặt lại");
+            order.setUpdatedAt(LocalDateTime.now());
+            try {
+                orderRepo.insert(order);
+                saved.add(order);
+            } catch (RuntimeException e) {
+                // Mongo vẫn lỗi: key trỏ tới đơn không tồn tại và được nhận lại sau app.orders.idempotency-grace-ms
+                log.error("Không lưu được đơn đã huỷ {}", order.getId(), e);
+            }
+        }
+        return saved;
+    }
+}
@@ -0,0 +1,109 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.OrderPage;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Danh sách đơn hàng phân trang theo keyset (createdAt, _id) giảm dần: trang sau bắt đầu ngay sau
+ * đơn cuối của trang trước, nên thời gian mỗi trang không phụ thuộc đang ở trang thứ mấy (không dùng skip).
+ * Cursor là base64 của "createdAt-millis:id", client chỉ việc gửi lại.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderQueryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * @param userId       null = mọi user (admin)
+     * @param status       lọc theo trạng thái (có thể null)
+     * @param from         createdAt >= from (có thể null)
+     * @param to           createdAt < to (có thể null)
+     * @param cursor       nextCursor của trang trước, null cho trang đầu
+     * @param includeItems false: bỏ danh sách sản phẩm của từng đơn cho nhẹ
+     */
+    public OrderPage getPage(String userId, OrderStatus status, LocalDateTime from, LocalDateTime to,
+                             String cursor, Integer size, boolean includeItems) {
+        int limit = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        List<Criteria> criteria = new ArrayList<>(filter(userId, status, from, to));
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor after = decode(cursor);
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(after.createdAt()),
+                    Criteria.where("createdAt").is(after.createdAt()).and("_id").lt(after.id())));
+        }
+
+        Query query = new Query(criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .limit(limit + 1);
+        if (!includeItems) {
+            query.fields().exclude("items");
+        }
+
+        List<Order> orders = mongoTemplate.find(query, Order.class);
+        String nextCursor = null;
+        if (orders.size() > limit) {
+            orders = orders.subList(0, limit);
+            nextCursor = encode(orders.get(limit - 1));
+        }
+        return new OrderPage(orders, nextCursor);
+    }
+
+    // Điều kiện lọc dùng chung cho phân trang và export
+    List<Criteria> filter(String userId, OrderStatus status, LocalDateTime from, LocalDateTime to) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (userId != null) {
+            criteria.add(Criteria.where("userId").is(userId));
+        }
+        if (status != null) {
+            criteria.add(Criteria.where("status").is(status));
+        }
+        if (from != null) {
+            criteria.add(Criteria.where("createdAt").gte(from));
+        }
+        if (to != null) {
+            criteria.add(Criteria.where("createdAt").lt(to));
+        }
+        return criteria;
+    }
+
+    private String encode(Order last) {
+        long millis = last.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String raw = millis + ":" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Cursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            LocalDateTime createdAt = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(Long.parseLong(raw.substring(0, sep))), ZoneId.systemDefault());
+            return new Cursor(createdAt, raw.substring(sep + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new RuntimeException("Cursor không hợp lệ");
+        }
+    }
+
+    private record Cursor(LocalDateTime createdAt, String id) {
+    }
+}
@@ -1,76 +1,368 @@
 package com.cook_iq.auth.service;
 
 import com.cook_iq.auth.dto.CreateOrderRequest;
+import com.cook_iq.auth.event.OrderStatusChangedEvent;
 import com.cook_iq.auth.model.*;
 import com.cook_iq.auth.repository.OrderRepository;
 import com.cook_iq.auth.repository.ProductRepository;
-import com.cook_iq.auth.repository.UserRepository;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
+    // Field tạm trên document products: các lần giữ chỗ chưa chốt đơn {id, orderId, quantity, at}
+    private static final String STOCK_RESERVATIONS = "stockReservations";
+    private static final String PRODUCTS = "products";
+
     private final OrderRepository orderRepo;
     private final ProductRepository productRepo;
-    private final UserRepository userRepo;
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final InventoryLedger inventoryLedger;
+    private final TransitionScheduler transitionScheduler;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductCache productCache;
+
+    // Hạn tự động chuyển trạng thái
+    @Value("${app.orders.timeouts.unpaid-pending-minutes:30}")
+    private long unpaidPendingMinutes;
+    @Value("${app.orders.timeouts.shipping-minutes:2}")
+    private long shippingMinutes;
+    @Value("${app.orders.timeouts.delivered-minutes:10080}")
+    private long deliveredMinutes;
+    // Marker giữ chỗ cũ hơn mức này coi như bị bỏ lại (process chết giữa giữ chỗ và chốt đơn)
+    @Value("${app.orders.reservation-grace-ms:600000}")
+    private long reservationGraceMs;
+
+    @PostConstruct
+    public void init() {
+        transitionScheduler.setHandler(this::applyTransition);
+        if (transitionScheduler.isEmpty()) {
+            backfillTransitions();
+        }
+    }
 
-    @Transactional
+    // Không có Mongo transaction manager nên không dùng @Transactional:
+    // kho được trừ bằng update có điều kiện (atomic), lỗi giữa chừng thì hoàn lại phần đã trừ.
+    // Số round trip cố định bất kể giỏ hàng dài bao nhiêu: 1 $in + 1 bulk write + 1 insert + 1 dọn marker.
     public Order createOrder(String userId, CreateOrderRequest req) {
-        User user = userRepo.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        // userId đến từ principal đã xác thực nên không cần load lại User
+        long start = System.nanoTime();
 
-        double totalAmount = 0;
-        List<Order.OrderItem> orderItems = new ArrayList<>();
+        // 1. Load sản phẩm + dựng snapshot đơn hàng
+        Order order = buildOrder(userId, req);
+        long loaded = System.nanoTime();
+
+        // 2. Giữ chỗ tồn kho
+        String reservationId = reserveStock(order);
+        long reservedAt = System.nanoTime();
+
+        // 3. Lưu Order
+        Order saved;
+        try {
+            saved = orderRepo.save(order);
+        } catch (RuntimeException e) {
+            releaseStock(order, reservationId);
+            throw e;
+        }
+        long insertedAt = System.nanoTime();
+
+        // 4. Đơn đã lưu → bỏ marker giữ chỗ, hẹn giờ huỷ nếu chưa thanh toán
+        clearReservation(order, reservationId);
+        onOrderCreated(saved);
+        long finishedAt = System.nanoTime();
 
-        // 1. Duyệt qua từng sản phẩm để tính tiền và check kho
-        for (CreateOrderRequest.CartItemDto itemDto : req.getItems()) {
-            Product product = productRepo.findById(itemDto.getProductId())
-                    .orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại: " + itemDto.getProductId()));
+        phaseTimer("load").record(loaded - start, TimeUnit.NANOSECONDS);
+        phaseTimer("reserve").record(reservedAt - loaded, TimeUnit.NANOSECONDS);
+        phaseTimer("insert").record(insertedAt - reservedAt, TimeUnit.NANOSECONDS);
+        phaseTimer("cleanup").record(finishedAt - insertedAt, TimeUnit.NANOSECONDS);
+        meterRegistry.summary("orders.checkout.lines").record(order.getItems().size());
+        log.debug("Checkout {} dòng: load={}µs reserve={}µs insert={}µs cleanup={}µs", order.getItems().size(),
+                (loaded - start) / 1000, (reservedAt - loaded) / 1000,
+                (insertedAt - reservedAt) / 1000, (finishedAt - insertedAt) / 1000);
+        return saved;
+    }
 
-            if (product.getStockQuantity() < itemDto.getQuantity()) {
+    /**
+     * Kiểm tra giỏ hàng và dựng Order (PENDING, id gán sẵn) từ snapshot giá hiện tại, chưa trừ kho.
+     * Các dòng trùng productId được gộp; load tất cả sản phẩm bằng một query $in.
+     */
+    public Order buildOrder(String userId, CreateOrderRequest req) {
+        Map<String, Integer> quantities = mergeCartLines(req.getItems());
+
+        Map<String, Product> products = new HashMap<>();
+        productRepo.findAllById(quantities.keySet()).forEach(p -> products.put(p.getId(), p));
+
+        double totalAmount = 0;
+        List<Order.OrderItem> orderItems = new ArrayList<>();
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            Product product = products.get(line.getKey());
+            if (product == null) {
+                throw new RuntimeException("Sản phẩm không tồn tại: " + line.getKey());
+            }
+            // Sản phẩm hot: tồn kho nằm trong InventoryLedger, kiểm tra lúc giữ chỗ
+            if (!inventoryLedger.isHot(product.getId()) && product.getStockQuantity() < line.getValue()) {
                 throw new RuntimeException("Sản phẩm " + product.getName() + " không đủ số lượng tồn kho.");
             }
 
-            // Trừ kho
-            product.setStockQuantity(product.getStockQuantity() - itemDto.getQuantity());
-            productRepo.save(product);
-
             // Tạo OrderItem snapshot
             Order.OrderItem orderItem = Order.OrderItem.builder()
                     .productId(product.getId())
                     .productName(product.getName())
                     .price(product.getPrice())
-                    .quantity(itemDto.getQuantity())
+                    .quantity(line.getValue())
                     .image(product.getImages() != null && !product.getImages().isEmpty() ? product.getImages().get(0) : "")
                     .build();
 
             orderItems.add(orderItem);
-            totalAmount += (product.getPrice() * itemDto.getQuantity());
+            totalAmount += (product.getPrice() * line.getValue());
         }
 
-        // 2. Tạo Order
-        Order order = Order.builder()
+        LocalDateTime now = LocalDateTime.now();
+        return Order.builder()
+                .id(new ObjectId().toHexString())
                 .userId(userId)
                 .customerName(req.getCustomerName())
                 .phone(req.getPhone())
                 .address(req.getAddress())
                 .paymentMethod(req.getPaymentMethod())
+                .paymentDueAt(isPrepaid(req.getPaymentMethod()) ? now.plusMinutes(unpaidPendingMinutes) : null)
                 .status(OrderStatus.PENDING) // Mặc định là Chờ duyệt
                 .items(orderItems)
                 .totalAmount(totalAmount)
-                .createdAt(LocalDateTime.now())
-                .updatedAt(LocalDateTime.now())
+                .createdAt(now)
+                .updatedAt(now)
                 .build();
+    }
+
+    /**
+     * Trừ kho cho cả đơn: sản phẩm hot giữ chỗ trong bộ nhớ, phần còn lại bằng một bulk write.
+     * @return reservationId dùng cho {@link #releaseStock} / {@link #clearReservation}
+     */
+    public String reserveStock(Order order) {
+        Map<String, Integer> hot = new LinkedHashMap<>();
+        Map<String, Integer> cold = new LinkedHashMap<>();
+        splitByLedger(order, hot, cold);
+
+        reserveHotStock(order, hot);
+        String reservationId = UUID.randomUUID().toString();
+        if (!cold.isEmpty()) {
+            try {
+                reserveColdStock(order, reservationId, cold);
+            } catch (RuntimeException e) {
+                releaseHotStock(hot);
+                throw e;
+            }
+        }
+        return reservationId;
+    }
+
+    // Hoàn lại toàn bộ phần đã trừ của một đơn chưa lưu được
+    public void releaseStock(Order order, String reservationId) {
+        Map<String, Integer> hot = new LinkedHashMap<>();
+        Map<String, Integer> cold = new LinkedHashMap<>();
+        splitByLedger(order, hot, cold);
+        releaseHotStock(hot);
+        if (!cold.isEmpty()) {
+            releaseColdStock(reservationId, cold);
+        }
+    }
+
+    public void clearReservation(Order order, String reservationId) {
+        List<String> coldIds = order.getItems().stream()
+                .map(Order.OrderItem::getProductId)
+                .filter(id -> !inventoryLedger.isHot(id))
+                .toList();
+        if (!coldIds.isEmpty()) {
+            mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("_id").in(coldIds)),
+                    new Update().pull(STOCK_RESERVATIONS, new Document("id", reservationId)),
+                    Product.class);
+        }
+    }
+
+    // Đơn vừa lưu: đăng ký timer cho trạng thái ban đầu, báo cho rollup
+    public void onOrderCreated(Order order) {
+        if (timeoutTarget(order) != null) {
+            rescheduleTimeout(order);
+        }
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(order, null, order.getStatus()));
+    }
+
+    private Map<String, Integer> mergeCartLines(List<CreateOrderRequest.CartItemDto> items) {
+        if (items == null || items.isEmpty()) {
+            throw new RuntimeException("Giỏ hàng trống");
+        }
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (CreateOrderRequest.CartItemDto item : items) {
+            if (item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new RuntimeException("Số lượng không hợp lệ: " + item.getProductId());
+            }
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private void splitByLedger(Order order, Map<String, Integer> hot, Map<String, Integer> cold) {
+        for (Order.OrderItem item : order.getItems()) {
+            (inventoryLedger.isHot(item.getProductId()) ? hot : cold).put(item.getProductId(), item.getQuantity());
+        }
+    }
+
+    // Giữ chỗ trong InventoryLedger; dòng nào hết hàng thì trả lại các dòng đã giữ trước đó
+    private void reserveHotStock(Order order, Map<String, Integer> hot) {
+        Map<String, Integer> reserved = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> line : hot.entrySet()) {
+            if (!inventoryLedger.reserve(line.getKey(), line.getValue())) {
+                releaseHotStock(reserved);
+                throw new RuntimeException("Sản phẩm " + productName(order, line.getKey()) + " không đủ số lượng tồn kho.");
+            }
+            reserved.put(line.getKey(), line.getValue());
+        }
+    }
 
-        return orderRepo.save(order);
+    private void releaseHotStock(Map<String, Integer> hot) {
+        hot.forEach(inventoryLedger::release);
+    }
+
+    // Mỗi dòng là một update có điều kiện stock >= qty (không bán vượt tồn kho), gửi chung một bulk unordered.
+    // Dòng nào trừ được thì gắn marker (reservationId, orderId, số lượng) vào stockReservations
+    // để biết chính xác dòng nào cần hoàn nếu lỗi, và để sweepReservations dọn được nếu process chết giữa chừng.
+    private void reserveColdStock(Order order, String reservationId, Map<String, Integer> quantities) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        Instant now = Instant.now();
+        quantities.forEach((productId, quantity) -> bulk.updateOne(
+                Query.query(Criteria.where("_id").is(productId).and("stockQuantity").gte(quantity)),
+                new Update().inc("stockQuantity", -quantity)
+                        .inc("version", 1)
+                        .set("updatedAt", now)
+                        .push(STOCK_RESERVATIONS, new Document("id", reservationId)
+                                .append("orderId", order.getId())
+                                .append("quantity", quantity)
+                                .append("at", Date.from(now)))));
+        BulkWriteResult result = bulk.execute();
+        productCache.invalidateAll(quantities.keySet());
+
+        if (result.getMatchedCount() < quantities.size()) {
+            // Có sản phẩm vừa bị người khác mua hết: chỉ báo các dòng không nhận được marker, rồi hoàn những dòng đã trừ
+            Query reservedQuery = Query.query(Criteria.where("_id").in(quantities.keySet())
+                    .and(STOCK_RESERVATIONS + ".id").is(reservationId));
+            reservedQuery.fields().include("_id");
+            Set<String> reserved = mongoTemplate.find(reservedQuery, Product.class).stream()
+                    .map(Product::getId)
+                    .collect(Collectors.toSet());
+            releaseColdStock(reservationId, quantities);
+            String names = quantities.keySet().stream()
+                    .filter(id -> !reserved.contains(id))
+                    .map(id -> productName(order, id))
+                    .collect(Collectors.joining(", "));
+            throw new RuntimeException("Sản phẩm " + names + " không đủ số lượng tồn kho.");
+        }
+    }
+
+    // Hoàn kho, chỉ cho các dòng còn mang marker của lần giữ chỗ này
+    private void releaseColdStock(String reservationId, Map<String, Integer> quantities) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        Instant now = Instant.now();
+        quantities.forEach((productId, quantity) -> bulk.updateOne(
+                Query.query(Criteria.where("_id").is(productId).and(STOCK_RESERVATIONS + ".id").is(reservationId)),
+                new Update().inc("stockQuantity", quantity)
+                        .inc("version", 1)
+                        .set("updatedAt", now)
+                        .pull(STOCK_RESERVATIONS, new Document("id", reservationId))));
+        bulk.execute();
+        productCache.invalidateAll(quantities.keySet());
+    }
+
+    /**
+     * Dọn marker giữ chỗ bị bỏ lại khi process chết giữa {@link #reserveStock} và {@link #clearReservation}.
+     * Đơn đã lưu thì kho đã trừ đúng, chỉ bỏ marker; đơn không tồn tại thì hoàn lại số lượng của marker.
+     * Mỗi bước đều có điều kiện marker còn đó nên chạy song song trên nhiều node vẫn chỉ hoàn một lần.
+     */
+    @Scheduled(fixedDelayString = "${app.orders.reservation-sweep-ms:60000}",
+            initialDelayString = "${app.orders.reservation-sweep-ms:60000}")
+    public void sweepReservations() {
+        Date cutoff = new Date(System.currentTimeMillis() - reservationGraceMs);
+        Query query = Query.query(Criteria.where(STOCK_RESERVATIONS + ".at").lt(cutoff));
+        query.fields().include(STOCK_RESERVATIONS);
+        int restored = 0;
+        int cleared = 0;
+        for (Document product : mongoTemplate.find(query, Document.class, PRODUCTS)) {
+            for (Document marker : product.getList(STOCK_RESERVATIONS, Document.class, List.of())) {
+                Date at = marker.getDate("at");
+                if (at == null || !at.before(cutoff)) {
+                    continue;
+                }
+                Object productId = product.get("_id");
+                String reservationId = marker.getString("id");
+                Query markerQuery = Query.query(Criteria.where("_id").is(productId)
+                        .and(STOCK_RESERVATIONS + ".id").is(reservationId));
+                Update update = new Update().pull(STOCK_RESERVATIONS, new Document("id", reservationId));
+                boolean orderSaved = orderRepo.existsById(marker.getString("orderId"));
+                if (!orderSaved) {
+                    update.inc("stockQuantity", marker.getInteger("quantity", 0))
+                            .inc("version", 1)
+                            .set("updatedAt", Instant.now());
+                }
+                if (mongoTemplate.updateFirst(markerQuery, update, PRODUCTS).getModifiedCount() > 0) {
+                    if (orderSaved) {
+                        cleared++;
+                    } else {
+                        restored++;
+                        productCache.invalidate(productId.toString());
+                    }
+                }
+            }
+        }
+        if (restored + cleared > 0) {
+            log.warn("Dọn marker giữ chỗ bị bỏ lại: hoàn kho {} dòng, bỏ marker {} dòng", restored, cleared);
+        }
+    }
+
+    private String productName(Order order, String productId) {
+        return order.getItems().stream()
+                .filter(item -> item.getProductId().equals(productId))
+                .map(Order.OrderItem::getProductName)
+                .findFirst()
+                .orElse(productId);
+    }
+
+    private Timer phaseTimer(String phase) {
+        return meterRegistry.timer("orders.checkout.phase", "phase", phase);
     }
 
     // Lấy đơn của User
@@ -83,33 +375,181 @@ public class OrderService {
         return orderRepo.findAllByOrderByCreatedAtDesc();
     }
 
+    // Admin xác nhận đã nhận tiền (chuyển khoản, QR): đơn không còn bị huỷ vì quá hạn thanh toán.
+    // Điều kiện paidAt chưa có + chưa huỷ: timer huỷ chạy cùng lúc thì chỉ một bên thắng
+    public Order markPaid(String orderId) {
+        Order saved = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(orderId).and("paidAt").exists(false)
+                        .and("status").ne(OrderStatus.CANCELLED)),
+                new Update().set("paidAt", LocalDateTime.now()).set("updatedAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true),
+                Order.class);
+        if (saved == null) {
+            Order order = orderRepo.findById(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại"));
+            if (order.getPaidAt() != null) {
+                return order;
+            }
+            throw new RuntimeException("Đơn hàng đã huỷ, không thể xác nhận thanh toán");
+        }
+        rescheduleTimeout(saved);
+        return saved;
+    }
+
     // Admin cập nhật trạng thái (Duyệt, Hủy...)
+    // Update có điều kiện status == trạng thái vừa đọc (giống applyTransition): timer hoặc một admin khác
+    // đổi trước thì lần này không khớp, nên kho chỉ được hoàn đúng một lần
     public Order updateStatus(String orderId, OrderStatus newStatus) {
         Order order = orderRepo.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại"));
 
-        // Nếu hủy đơn -> Hoàn lại kho (Logic nâng cao, ở đây tạm bỏ qua cho đơn giản)
+        OrderStatus oldStatus = order.getStatus();
+        if (oldStatus == newStatus) {
+            return order;
+        }
+        // Đơn huỷ đã hoàn kho (hoặc chưa từng giữ kho nếu bị huỷ lúc nhận đơn) nên không mở lại được
+        if (oldStatus == OrderStatus.CANCELLED) {
+            throw new RuntimeException("Đơn hàng đã huỷ, không thể chuyển sang trạng thái khác");
+        }
+
+        Order saved = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(orderId).and("status").is(oldStatus)),
+                new Update().set("status", newStatus).set("updatedAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true),
+                Order.class);
+        if (saved == null) {
+            throw new RuntimeException("Trạng thái đơn hàng vừa thay đổi, vui lòng tải lại");
+        }
+
+        // Hủy đơn -> Hoàn lại kho
+        if (newStatus == OrderStatus.CANCELLED) {
+            restoreStock(saved);
+        }
+        rescheduleTimeout(saved);
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(saved, oldStatus, newStatus));
+        return saved;
+    }
+
+    // --- CHUYỂN TRẠNG THÁI TỰ ĐỘNG ---
+    // Mỗi trạng thái có hạn riêng; timer được đăng ký khi đơn vào trạng thái đó và huỷ khi rời đi:
+    // PENDING (có hạn thanh toán, chưa trả tiền) → CANCELLED, SHIPPING → DELIVERED, DELIVERED → COMPLETED
+    private void rescheduleTimeout(Order order) {
+        OrderStatus target = timeoutTarget(order);
+        if (target == null) {
+            transitionScheduler.cancel(order.getId());
+            return;
+        }
+        transitionScheduler.schedule(order.getId(), order.getStatus().name(), target.name(), fireAt(order));
+    }
+
+    private OrderStatus timeoutTarget(Order order) {
+        return switch (order.getStatus()) {
+            case PENDING -> awaitingPayment(order) ? OrderStatus.CANCELLED : null;
+            case SHIPPING -> OrderStatus.DELIVERED;
+            case DELIVERED -> OrderStatus.COMPLETED;
+            default -> null;
+        };
+    }
+
+    // COD thanh toán khi nhận hàng nên không có hạn thanh toán
+    private boolean isPrepaid(String paymentMethod) {
+        return paymentMethod != null && !"COD".equalsIgnoreCase(paymentMethod);
+    }
 
-        order.setStatus(newStatus);
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepo.save(order);
+    // Chỉ đơn có hạn thanh toán (tạo từ khi có tính năng này) và admin chưa xác nhận tiền
+    private boolean awaitingPayment(Order order) {
+        return order.getPaymentDueAt() != null && order.getPaidAt() == null;
     }
 
-    // --- JOB TỰ ĐỘNG ---
-    // Giả lập đơn vị vận chuyển: Quét các đơn đang SHIPPING, tự động chuyển thành DELIVERED sau 2 phút
-    // Cần thêm @EnableScheduling ở file main Application
-    @Scheduled(fixedRate = 60000) // Chạy mỗi 60 giây
-    public void autoUpdateShippingStatus() {
-        List<Order> shippingOrders = orderRepo.findByStatus(OrderStatus.SHIPPING);
+    private Date fireAt(Order order) {
+        LocalDateTime at = switch (order.getStatus()) {
+            case PENDING -> order.getPaymentDueAt();
+            case SHIPPING -> order.getUpdatedAt().plusMinutes(shippingMinutes);
+            default -> order.getUpdatedAt().plusMinutes(deliveredMinutes);
+        };
+        return Date.from(at.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    // Timer tới hạn: chỉ chuyển nếu đơn vẫn ở trạng thái lúc hẹn (admin có thể đã đổi trước đó)
+    private void applyTransition(ScheduledTransition transition) {
+        OrderStatus to = OrderStatus.valueOf(transition.getToStatus());
+        Update update = new Update().set("status", to).set("updatedAt", LocalDateTime.now());
+        Criteria criteria = Criteria.where("_id").is(transition.getId()).and("status").is(transition.getFromStatus());
+        if (to == OrderStatus.CANCELLED) {
+            update.set("cancelReason", "Quá hạn thanh toán");
+            // Admin xác nhận tiền ngay trước khi timer chạy thì không huỷ; timer cũ đã lưu cho đơn
+            // không có hạn thanh toán cũng bỏ qua
+            criteria.and("paymentDueAt").exists(true).and("paidAt").exists(false);
+        }
+        Order updated = mongoTemplate.findAndModify(
+                Query.query(criteria),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Order.class);
+        if (updated == null) {
+            return;
+        }
+        if (to == OrderStatus.CANCELLED) {
+            restoreStock(updated);
+        }
+        rescheduleTimeout(updated);
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(
+                updated, OrderStatus.valueOf(transition.getFromStatus()), to));
+        log.info("Auto updated order {} from {} to {}", updated.getId(), transition.getFromStatus(), to);
+    }
 
-        for (Order order : shippingOrders) {
-            // Logic giả lập: Nếu đơn đã ở trạng thái Shipping hơn 2 phút thì coi như đã giao
-            if (order.getUpdatedAt().isBefore(LocalDateTime.now().minusMinutes(2))) {
-                order.setStatus(OrderStatus.DELIVERED);
-                order.setUpdatedAt(LocalDateTime.now());
-                orderRepo.save(order);
-                System.out.println("Auto updated order " + order.getId() + " to DELIVERED");
+    // Trả hàng của đơn đã huỷ về kho
+    private void restoreStock(Order order) {
+        Map<String, Integer> hot = new LinkedHashMap<>();
+        Map<String, Integer> cold = new LinkedHashMap<>();
+        splitByLedger(order, hot, cold);
+        releaseHotStock(hot);
+        if (!cold.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+            Instant now = Instant.now();
+            cold.forEach((productId, quantity) -> bulk.updateOne(
+                    Query.query(Criteria.where("_id").is(productId)),
+                    new Update().inc("stockQuantity", quantity).inc("version", 1).set("updatedAt", now)));
+            bulk.execute();
+            productCache.invalidateAll(cold.keySet());
+        }
+    }
+
+    // Lần đầu chạy với scheduler: đăng ký timer cho các đơn đang dở dang (đơn quá hạn sẽ chuyển ngay ở tick đầu).
+    // Đơn cũ không có paymentDueAt nên không bị huỷ hồi tố
+    // (trước đây không có cách nào biết đơn chuyển khoản đã trả tiền hay chưa)
+    private void backfillTransitions() {
+        Query query = Query.query(Criteria.where("status")
+                .in(OrderStatus.PENDING, OrderStatus.SHIPPING, OrderStatus.DELIVERED));
+        query.fields().include("status", "paymentDueAt", "paidAt", "updatedAt");
+        List<ScheduledTransition> batch = new ArrayList<>();
+        int total = 0;
+        try (Stream<Order> orders = mongoTemplate.stream(query, Order.class)) {
+            for (Order order : (Iterable<Order>) orders::iterator) {
+                OrderStatus target = timeoutTarget(order);
+                if (target == null || order.getUpdatedAt() == null) {
+                    continue;
+                }
+                batch.add(ScheduledTransition.builder()
+                        .id(order.getId())
+                        .fromStatus(order.getStatus().name())
+                        .toStatus(target.name())
+                        .fireAt(fireAt(order))
+                        .createdAt(new Date())
+                        .build());
+                if (batch.size() == 500) {
+                    total += batch.size();
+                    transitionScheduler.scheduleAll(batch);
+                    batch = new ArrayList<>();
+                }
             }
         }
+        if (!batch.isEmpty()) {
+            total += batch.size();
+            transitionScheduler.scheduleAll(batch);
+        }
+        if (total > 0) {
+            log.info("Đã đăng ký timer cho {} đơn hàng hiện có", total);
+        }
     }
-}
\ No newline at end of file
+}
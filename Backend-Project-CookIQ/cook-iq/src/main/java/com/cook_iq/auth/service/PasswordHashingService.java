@@ -0,0 +1,130 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chạy BCrypt (encode / matches) trên một pool riêng có giới hạn số thread và độ dài hàng đợi,
+ * để đợt login dồn dập không chiếm hết thread Tomcat của các API khác.
+ * Hàng đợi đầy thì từ chối ngay bằng {@link TooManyRequestsException} (429 + Retry-After).
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final long retryAfterSeconds;
+    private final long latencyBudgetMs;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.security.hashing.threads:0}") int threads,
+                                  @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${app.security.hashing.timeout-ms:5000}") long timeoutMs,
+                                  @Value("${app.security.hashing.retry-after-seconds:2}") long retryAfterSeconds,
+                                  @Value("${app.security.bcrypt-latency-budget-ms:250}") long latencyBudgetMs) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeoutMs = timeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.latencyBudgetMs = latencyBudgetMs;
+
+        // Mặc định = số CPU: BCrypt thuần CPU, thêm thread không tăng throughput
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "password-hashing-" + threadCounter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("auth.hashing.queue.depth", executor, e -> e.getQueue().size())
+                .description("Số yêu cầu BCrypt đang chờ trong hàng đợi")
+                .register(meterRegistry);
+        Gauge.builder("auth.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        this.encodeTimer = Timer.builder("auth.hashing.latency").tag("op", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("auth.hashing.latency").tag("op", "matches").register(meterRegistry);
+    }
+
+    public String encode(String rawPassword) {
+        return submit(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return submit(() -> matchesTimer.record(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    // Đo thời gian hash với cost đang cấu hình và cảnh báo nếu vượt ngân sách độ trễ
+    @PostConstruct
+    public void benchmarkCost() {
+        passwordEncoder.encode("warm-up");
+        int rounds = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            passwordEncoder.encode("benchmark-" + i);
+        }
+        long avgMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / rounds;
+        if (avgMs > latencyBudgetMs) {
+            log.warn("BCrypt mất {} ms/lần, vượt ngân sách {} ms - cân nhắc giảm app.security.bcrypt-strength",
+                    avgMs, latencyBudgetMs);
+        } else {
+            log.info("BCrypt mất {} ms/lần (ngân sách {} ms), pool {} thread, hàng đợi {}",
+                    avgMs, latencyBudgetMs, executor.getMaximumPoolSize(), executor.getQueue().remainingCapacity());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new TooManyRequestsException("Hệ thống đang bận, vui lòng thử lại sau", retryAfterSeconds);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TooManyRequestsException("Hệ thống đang bận, vui lòng thử lại sau", retryAfterSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bị gián đoạn khi xử lý mật khẩu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Near cache cho trang chi tiết sản phẩm, tra theo id và theo slug (slug → id).
+ * Giới hạn theo tổng dung lượng ước tính (app.product-cache.max-weight-bytes); mỗi entry nặng tối thiểu
+ * maxWeight / maxEntries nên số entry cũng không vượt app.product-cache.max-entries.
+ * Entry mang Product.version: ghi đè chỉ khi version mới hơn, nên update chạy song song không làm cache lùi về bản cũ.
+ * TTL chỉ để chặn dữ liệu cũ do node khác sửa. Hit / miss qua Micrometer (cache=products.*).
+ */
+@Component
+public class ProductCache {
+
+    private final Cache<String, Product> byId;
+    private final Cache<String, String> idBySlug;
+
+    public ProductCache(MeterRegistry meterRegistry,
+                        @Value("${app.product-cache.max-entries:10000}") long maxEntries,
+                        @Value("${app.product-cache.max-weight-bytes:67108864}") long maxWeightBytes,
+                        @Value("${app.product-cache.ttl-seconds:300}") long ttlSeconds) {
+        int minWeight = (int) Math.max(1, maxWeightBytes / maxEntries);
+        this.byId = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String id, Product p) -> Math.max(minWeight, estimateBytes(p)))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.idBySlug = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "products.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, idBySlug, "products.bySlug");
+    }
+
+    // Trả về bản sao: caller được phép sửa (vd. gán tồn kho live) mà không ảnh hưởng cache
+    public Product getById(String id, Function<String, Product> loader) {
+        return copy(byId.get(id, loader));
+    }
+
+    public Product getBySlug(String slug, Function<String, Product> loader) {
+        String id = idBySlug.getIfPresent(slug);
+        if (id != null) {
+            Product cached = byId.getIfPresent(id);
+            if (cached != null && slug.equals(cached.getSlug())) {
+                return copy(cached);
+            }
+        }
+        Product loaded = loader.apply(slug);
+        if (loaded == null) {
+            return null;
+        }
+        put(loaded);
+        idBySlug.put(slug, loaded.getId());
+        return copy(loaded);
+    }
+
+    // Ghi bản mới nhất sau create / update (bỏ qua nếu cache đang giữ version mới hơn)
+    public void put(Product product) {
+        byId.asMap().merge(product.getId(), copy(product),
+                (current, updated) -> version(updated) >= version(current) ? updated : current);
+    }
+
+    // Thay đổi chỉ tồn kho: sửa entry đang cache thay vì xoá
+    public void updateStock(String id, int stockQuantity, long version, Instant updatedAt) {
+        byId.asMap().computeIfPresent(id, (key, current) -> version > version(current)
+                ? current.toBuilder().stockQuantity(stockQuantity).version(version).updatedAt(updatedAt).build()
+                : current);
+    }
+
+    public void invalidate(String id) {
+        byId.invalidate(id);
+    }
+
+    public void invalidateAll(Iterable<String> ids) {
+        byId.invalidateAll(ids);
+    }
+
+    private static long version(Product p) {
+        return p.getVersion() != null ? p.getVersion() : 0L;
+    }
+
+    private static Product copy(Product p) {
+        return p == null ? null : p.toBuilder().build();
+    }
+
+    // Ước lượng thô (byte) dựa trên độ dài chuỗi, đủ để cân bằng entry có mô tả dài với entry ngắn
+    private static int estimateBytes(Product p) {
+        long chars = length(p.getName()) + length(p.getSlug()) + length(p.getShortDescription())
+                + length(p.getDescription()) + length(p.getCurrency()) + length(p.getUnit())
+                + length(p.getCategoryId()) + length(p.getImages()) + length(p.getTags());
+        return (int) Math.min(Integer.MAX_VALUE, 256 + 2 * chars);
+    }
+
+    private static long length(String s) {
+        return s != null ? s.length() : 0;
+    }
+
+    private static long length(List<String> values) {
+        return values != null ? values.stream().mapToLong(v -> 16 + length(v)).sum() : 0;
+    }
+}
@@ -0,0 +1,478 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.dto.ProductFacetResult;
+import com.cook_iq.auth.event.ProductChangedEvent;
+import com.cook_iq.auth.event.ProductStockChangedEvent;
+import com.cook_iq.auth.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Lọc sản phẩm theo facet (danh mục, tag, khoảng giá, còn hàng, active) bằng Roaring bitmap trong bộ nhớ:
+ * mỗi sản phẩm có một số thứ tự (doc), mỗi giá trị facet / bucket giá là một bitmap các doc,
+ * nên AND / OR bộ lọc và đếm số lượng từng facet chỉ là phép toán bitmap, không query Mongo.
+ * Dựng lại từ cursor lúc khởi động, cập nhật theo {@link ProductChangedEvent} / {@link ProductStockChangedEvent};
+ * thay đổi không đi qua ProductService (tồn kho do đơn hàng, node khác) được đồng bộ định kỳ theo updatedAt,
+ * sản phẩm bị xoá ở node khác được gỡ ở lần đối chiếu id.
+ */
+@Slf4j
+@Service
+public class ProductFacetService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductService productService;
+    private final InventoryLedger inventoryLedger;
+    private final double[] priceBounds;
+    private final int maxTagValues;
+    private final Timer filterTimer;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Được bảo vệ bởi lock
+    private Index index;
+    private volatile Instant lastSyncedAt = Instant.EPOCH;
+
+    public ProductFacetService(MongoTemplate mongoTemplate,
+                               ProductService productService,
+                               InventoryLedger inventoryLedger,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.facets.price-buckets:50000,100000,200000,500000,1000000}") double[] priceBounds,
+                               @Value("${app.facets.max-tag-values:30}") int maxTagValues) {
+        this.mongoTemplate = mongoTemplate;
+        this.productService = productService;
+        this.inventoryLedger = inventoryLedger;
+        this.priceBounds = Arrays.stream(priceBounds).sorted().toArray();
+        this.maxTagValues = maxTagValues;
+        this.filterTimer = Timer.builder("products.facets.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.index = new Index(this.priceBounds.length + 1);
+    }
+
+    /**
+     * Điều kiện lọc; trường null / rỗng là không lọc theo facet đó.
+     *
+     * @param categoryIds OR giữa các danh mục
+     * @param tags        OR (hoặc AND nếu matchAllTags) giữa các tag
+     */
+    public record FacetFilter(List<String> categoryIds, List<String> tags, boolean matchAllTags,
+                              Double minPrice, Double maxPrice, Boolean inStock, Boolean active) {
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Instant startedAt = Instant.now();
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.fields().include("categoryId", "tags", "price", "stockQuantity", "isActive");
+
+        Index newIndex = new Index(priceBounds.length + 1);
+        try (Stream<Product> products = mongoTemplate.stream(query, Product.class)) {
+            products.forEach(p -> newIndex.put(p.getId(), facetsOf(p)));
+        }
+        newIndex.optimize();
+
+        lock.writeLock().lock();
+        try {
+            index = newIndex;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastSyncedAt = startedAt;
+        log.info("Đã dựng bitmap facet cho {} sản phẩm", newIndex.docs.size());
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.product() == null) {
+                index.remove(event.productId());
+            } else {
+                index.put(event.productId(), facetsOf(event.product()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onStockChanged(ProductStockChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            index.setInStock(event.productId(), event.stockQuantity() > 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Đơn hàng trừ / hoàn kho thẳng trên Mongo, ledger flush và sửa trên node khác đều set updatedAt:
+    // chỉ đọc lại các sản phẩm đó (sản phẩm bị xoá trên node khác: xem removeDeleted)
+    @Scheduled(fixedDelayString = "${app.facets.sync-interval-ms:10000}")
+    public void sync() {
+        Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("updatedAt").gte(lastSyncedAt));
+        query.fields().include("categoryId", "tags", "price", "stockQuantity", "isActive");
+        List<Product> changed = mongoTemplate.find(query, Product.class);
+
+        lock.writeLock().lock();
+        try {
+            changed.forEach(p -> index.put(p.getId(), facetsOf(p)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Lùi 1 giây để không lỡ document ghi cùng lúc với lần sync
+        lastSyncedAt = now.minusSeconds(1);
+    }
+
+    // Sản phẩm bị xoá trên node khác không còn document để sync theo updatedAt: đối chiếu id trong index với Mongo.
+    // Chỉ xét id đã có trong index trước khi đọc Mongo, nên sản phẩm vừa thêm trong lúc đối chiếu không bị gỡ nhầm
+    @Scheduled(fixedDelayString = "${app.facets.reconcile-interval-ms:300000}",
+            initialDelayString = "${app.facets.reconcile-interval-ms:300000}")
+    public void removeDeleted() {
+        List<String> indexed;
+        lock.readLock().lock();
+        try {
+            indexed = new ArrayList<>(index.docIds.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        Set<String> deleted = productService.findDeleted(indexed);
+        if (deleted.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            deleted.forEach(index::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Đã gỡ {} sản phẩm bị xoá khỏi bitmap facet", deleted.size());
+    }
+
+    public ProductFacetResult filter(FacetFilter filter, Pageable pageable) {
+        long start = System.nanoTime();
+        List<String> pageIds = new ArrayList<>();
+        long total;
+        Map<String, Long> categoryCounts;
+        Map<String, Long> tagCounts;
+        Map<String, Long> priceCounts;
+        long inStockCount;
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap base = filter.active() == null ? index.all
+                    : filter.active() ? index.active : RoaringBitmap.andNot(index.all, index.active);
+            RoaringBitmap stock = filter.inStock() == null ? null
+                    : filter.inStock() ? index.inStock : RoaringBitmap.andNot(index.all, index.inStock);
+            RoaringBitmap categories = union(index.byCategory, filter.categoryIds());
+            RoaringBitmap tags = filter.matchAllTags()
+                    ? intersection(index.byTag, filter.tags())
+                    : union(index.byTag, filter.tags());
+            RoaringBitmap price = priceRange(filter.minPrice(), filter.maxPrice());
+
+            RoaringBitmap result = and(base, stock, categories, tags, price);
+            total = result.getLongCardinality();
+            collectPage(result, pageable, pageIds);
+
+            // Đếm kiểu disjunctive: mỗi facet đếm trên kết quả của các bộ lọc còn lại
+            categoryCounts = counts(index.byCategory, and(base, stock, tags, price), Integer.MAX_VALUE);
+            RoaringBitmap tagScope = filter.matchAllTags() ? result : and(base, stock, categories, price);
+            tagCounts = counts(index.byTag, tagScope, maxTagValues);
+            priceCounts = priceCounts(and(base, stock, categories, tags));
+            inStockCount = RoaringBitmap.andCardinality(and(base, categories, tags, price), index.inStock);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<ProductDto> cards = productService.getCards(pageIds);
+        filterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new ProductFacetResult(cards, total, pageable.getPageNumber(), pageable.getPageSize(),
+                categoryCounts, tagCounts, priceCounts, inStockCount);
+    }
+
+    // Sản phẩm mới nhất trước (doc tăng dần theo thứ tự thêm vào index)
+    private void collectPage(RoaringBitmap result, Pageable pageable, List<String> pageIds) {
+        long skip = pageable.getOffset();
+        IntIterator it = result.getReverseIntIterator();
+        while (it.hasNext() && pageIds.size() < pageable.getPageSize()) {
+            int doc = it.next();
+            if (skip > 0) {
+                skip--;
+            } else {
+                pageIds.add(index.productIds.get(doc));
+            }
+        }
+    }
+
+    private RoaringBitmap union(Map<String, RoaringBitmap> bitmaps, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        for (String value : values) {
+            RoaringBitmap bitmap = bitmaps.get(value);
+            if (bitmap != null) {
+                result.or(bitmap);
+            }
+        }
+        return result;
+    }
+
+    private RoaringBitmap intersection(Map<String, RoaringBitmap> bitmaps, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap result = null;
+        for (String value : values) {
+            RoaringBitmap bitmap = bitmaps.get(value);
+            if (bitmap == null) {
+                return new RoaringBitmap();
+            }
+            result = result == null ? bitmap.clone() : RoaringBitmap.and(result, bitmap);
+        }
+        return result;
+    }
+
+    // Bucket nằm trọn trong khoảng thì OR cả bitmap, bucket ở hai đầu thì kiểm tra giá từng sản phẩm
+    private RoaringBitmap priceRange(Double min, Double max) {
+        if (min == null && max == null) {
+            return null;
+        }
+        double lo = min != null ? min : Double.NEGATIVE_INFINITY;
+        double hi = max != null ? max : Double.POSITIVE_INFINITY;
+        RoaringBitmap result = new RoaringBitmap();
+        for (int bucket = 0; bucket < index.byPrice.length; bucket++) {
+            double bucketLo = bucket == 0 ? 0 : priceBounds[bucket - 1];
+            double bucketHi = bucket < priceBounds.length ? priceBounds[bucket] : Double.POSITIVE_INFINITY;
+            if (bucketHi <= lo || bucketLo > hi) {
+                continue;
+            }
+            RoaringBitmap docs = index.byPrice[bucket];
+            if (bucketLo >= lo && bucketHi <= hi) {
+                result.or(docs);
+            } else {
+                docs.forEach((int doc) -> {
+                    double price = index.docs.get(index.productIds.get(doc)).price();
+                    if (price >= lo && price <= hi) {
+                        result.add(doc);
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Long> priceCounts(RoaringBitmap scope) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < index.byPrice.length; bucket++) {
+            long count = RoaringBitmap.andCardinality(scope, index.byPrice[bucket]);
+            if (count > 0) {
+                counts.put(priceLabel(bucket), count);
+            }
+        }
+        return counts;
+    }
+
+    // Các giá trị có count > 0, nhiều nhất trước, tối đa limit giá trị
+    private Map<String, Long> counts(Map<String, RoaringBitmap> bitmaps, RoaringBitmap scope, int limit) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (Map.Entry<String, RoaringBitmap> entry : bitmaps.entrySet()) {
+            long count = RoaringBitmap.andCardinality(scope, entry.getValue());
+            if (count > 0) {
+                entries.add(Map.entry(entry.getKey(), count));
+            }
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        entries.stream().limit(limit).forEach(e -> counts.put(e.getKey(), e.getValue()));
+        return counts;
+    }
+
+    // AND các bitmap khác null (null = không lọc)
+    private static RoaringBitmap and(RoaringBitmap base, RoaringBitmap... others) {
+        RoaringBitmap result = base.clone();
+        for (RoaringBitmap other : others) {
+            if (other != null) {
+                result.and(other);
+            }
+        }
+        return result;
+    }
+
+    private String priceLabel(int bucket) {
+        long lo = bucket == 0 ? 0 : (long) priceBounds[bucket - 1];
+        return bucket < priceBounds.length ? lo + "-" + (long) priceBounds[bucket] : lo + "+";
+    }
+
+    private int priceBucket(double price) {
+        int bucket = Arrays.binarySearch(priceBounds, price);
+        // Mốc thuộc bucket phía trên: [50000, 100000)
+        return bucket >= 0 ? bucket + 1 : -bucket - 1;
+    }
+
+    private DocFacets facetsOf(Product p) {
+        List<String> tags = p.getTags() == null ? List.of() : p.getTags().stream()
+                .filter(t -> t != null && !t.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+        int bucket = p.getPrice() != null ? priceBucket(p.getPrice()) : -1;
+        return new DocFacets(p.getCategoryId(), tags, p.getPrice() != null ? p.getPrice() : -1, bucket,
+                availableStock(p) > 0, !Boolean.FALSE.equals(p.getIsActive()));
+    }
+
+    // Sản phẩm hot: tồn kho trên Mongo trễ một nhịp flush, lấy số trong ledger
+    private int availableStock(Product p) {
+        Integer available = inventoryLedger.available(p.getId());
+        if (available != null) {
+            return available;
+        }
+        return p.getStockQuantity() != null ? p.getStockQuantity() : 0;
+    }
+
+    private record DocFacets(String categoryId, List<String> tags, double price, int priceBucket,
+                             boolean inStock, boolean active) {
+    }
+
+    /**
+     * Bitmap của mọi facet. Doc không được tái sử dụng sau khi xoá (thứ tự doc = thứ tự mới nhất),
+     * số doc được nén lại ở lần rebuild kế tiếp.
+     */
+    private static final class Index {
+        final Map<String, Integer> docIds = new HashMap<>();
+        final List<String> productIds = new ArrayList<>();
+        final Map<String, DocFacets> docs = new HashMap<>();
+
+        final RoaringBitmap all = new RoaringBitmap();
+        final RoaringBitmap active = new RoaringBitmap();
+        final RoaringBitmap inStock = new RoaringBitmap();
+        final Map<String, RoaringBitmap> byCategory = new HashMap<>();
+        final Map<String, RoaringBitmap> byTag = new HashMap<>();
+        final RoaringBitmap[] byPrice;
+
+        Index(int priceBuckets) {
+            byPrice = new RoaringBitmap[priceBuckets];
+            for (int i = 0; i < priceBuckets; i++) {
+                byPrice[i] = new RoaringBitmap();
+            }
+        }
+
+        void put(String productId, DocFacets facets) {
+            Integer existing = docIds.get(productId);
+            int doc;
+            if (existing != null) {
+                doc = existing;
+                clear(doc, docs.get(productId));
+            } else {
+                doc = productIds.size();
+                productIds.add(productId);
+                docIds.put(productId, doc);
+            }
+            docs.put(productId, facets);
+
+            all.add(doc);
+            if (facets.active()) {
+                active.add(doc);
+            }
+            if (facets.inStock()) {
+                inStock.add(doc);
+            }
+            if (facets.categoryId() != null) {
+                byCategory.computeIfAbsent(facets.categoryId(), k -> new RoaringBitmap()).add(doc);
+            }
+            for (String tag : facets.tags()) {
+                byTag.computeIfAbsent(tag, k -> new RoaringBitmap()).add(doc);
+            }
+            if (facets.priceBucket() >= 0) {
+                byPrice[facets.priceBucket()].add(doc);
+            }
+        }
+
+        void remove(String productId) {
+            Integer doc = docIds.remove(productId);
+            if (doc != null) {
+                clear(doc, docs.remove(productId));
+                productIds.set(doc, null);
+            }
+        }
+
+        void setInStock(String productId, boolean value) {
+            Integer doc = docIds.get(productId);
+            if (doc == null) {
+                return;
+            }
+            DocFacets facets = docs.get(productId);
+            if (facets.inStock() != value) {
+                docs.put(productId, new DocFacets(facets.categoryId(), facets.tags(), facets.price(),
+                        facets.priceBucket(), value, facets.active()));
+                if (value) {
+                    inStock.add(doc);
+                } else {
+                    inStock.remove(doc);
+                }
+            }
+        }
+
+        private void clear(int doc, DocFacets facets) {
+            all.remove(doc);
+            active.remove(doc);
+            inStock.remove(doc);
+            if (facets.categoryId() != null) {
+                removeFrom(byCategory, facets.categoryId(), doc);
+            }
+            for (String tag : facets.tags()) {
+                removeFrom(byTag, tag, doc);
+            }
+            if (facets.priceBucket() >= 0) {
+                byPrice[facets.priceBucket()].remove(doc);
+            }
+        }
+
+        private static void removeFrom(Map<String, RoaringBitmap> bitmaps, String key, int doc) {
+            RoaringBitmap bitmap = bitmaps.get(key);
+            if (bitmap != null) {
+                bitmap.remove(doc);
+                if (bitmap.isEmpty()) {
+                    bitmaps.remove(key);
+                }
+            }
+        }
+
+        // Chuyển container dày / liên tiếp sang run-length sau khi nạp hàng loạt
+        void optimize() {
+            all.runOptimize();
+            active.runOptimize();
+            inStock.runOptimize();
+            byCategory.values().forEach(RoaringBitmap::runOptimize);
+            byTag.values().forEach(RoaringBitmap::runOptimize);
+            Arrays.stream(byPrice).forEach(RoaringBitmap::runOptimize);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.event.ProductChangedEvent;
+import com.cook_iq.auth.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Tìm kiếm sản phẩm bằng inverted index trong bộ nhớ trên name, tags và shortDescription (đã bỏ dấu,
+ * nên "ca chua" khớp "cà chua"), xếp hạng BM25 với trọng số theo field.
+ * Dựng lại từ cursor Mongo lúc khởi động, cập nhật từng sản phẩm qua {@link ProductChangedEvent};
+ * sửa trên node khác được đồng bộ định kỳ theo updatedAt, sản phẩm bị xoá ở node khác được gỡ ở lần đối chiếu id.
+ * Chỉ index sản phẩm đang active; nội dung thẻ của trang kết quả lấy bằng một query $in.
+ */
+@Slf4j
+@Service
+public class ProductSearchService {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final float NAME_WEIGHT = 3f;
+    private static final float TAG_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductService productService;
+    private final Timer searchTimer;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term → productId → posting; được bảo vệ bởi lock
+    private Map<String, Map<String, Posting>> postings = new HashMap<>();
+    // productId → các term của sản phẩm (để gỡ khỏi index khi sửa / xoá)
+    private Map<String, List<String>> docTerms = new HashMap<>();
+    private double totalLength;
+    private volatile Instant lastSyncedAt = Instant.EPOCH;
+
+    public ProductSearchService(MongoTemplate mongoTemplate, ProductService productService, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.productService = productService;
+        this.searchTimer = Timer.builder("products.search.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Instant startedAt = Instant.now();
+        Query query = new Query();
+        query.fields().include("name", "tags", "shortDescription", "isActive");
+
+        Map<String, Map<String, Posting>> newPostings = new HashMap<>();
+        Map<String, List<String>> newDocTerms = new HashMap<>();
+        double[] length = {0};
+        try (Stream<Product> products = mongoTemplate.stream(query, Product.class)) {
+            products.filter(this::indexable)
+                    .forEach(p -> length[0] += add(newPostings, newDocTerms, p));
+        }
+
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            docTerms = newDocTerms;
+            totalLength = length[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastSyncedAt = startedAt;
+        log.info("Đã index {} sản phẩm, {} term", newDocTerms.size(), newPostings.size());
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            reindex(event.productId(), event.product());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ProductChangedEvent chỉ phát trên node đã sửa: đọc lại các sản phẩm có updatedAt mới (index updatedAt)
+    @Scheduled(fixedDelayString = "${app.search.sync-interval-ms:10000}")
+    public void sync() {
+        Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("updatedAt").gte(lastSyncedAt));
+        query.fields().include("name", "tags", "shortDescription", "isActive");
+        List<Product> changed = mongoTemplate.find(query, Product.class);
+
+        lock.writeLock().lock();
+        try {
+            changed.forEach(p -> reindex(p.getId(), p));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Lùi 1 giây để không lỡ document ghi cùng lúc với lần sync
+        lastSyncedAt = now.minusSeconds(1);
+    }
+
+    // Sản phẩm bị xoá trên node khác không còn document để sync theo updatedAt: đối chiếu id trong index với Mongo.
+    // Chỉ xét id đã có trong index trước khi đọc Mongo, nên sản phẩm vừa thêm trong lúc đối chiếu không bị gỡ nhầm
+    @Scheduled(fixedDelayString = "${app.search.reconcile-interval-ms:300000}",
+            initialDelayString = "${app.search.reconcile-interval-ms:300000}")
+    public void removeDeleted() {
+        List<String> indexed;
+        lock.readLock().lock();
+        try {
+            indexed = new ArrayList<>(docTerms.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        Set<String> deleted = productService.findDeleted(indexed);
+        if (deleted.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            deleted.forEach(id -> totalLength -= remove(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Đã gỡ {} sản phẩm bị xoá khỏi index tìm kiếm", deleted.size());
+    }
+
+    public Page<ProductDto> search(String q, Pageable pageable) {
+        long start = System.nanoTime();
+        List<String> terms = VietnameseText.tokenize(q).stream().distinct().toList();
+        if (terms.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        int needed = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize());
+        List<Map.Entry<String, Double>> top;
+        long total;
+        lock.readLock().lock();
+        try {
+            Map<String, Double> scores = score(terms);
+            total = scores.size();
+            top = topK(scores, needed);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<String> pageIds = top.stream()
+                .skip(pageable.getOffset())
+                .map(Map.Entry::getKey)
+                .toList();
+        List<ProductDto> cards = productService.getCards(pageIds);
+        searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new PageImpl<>(cards, pageable, total);
+    }
+
+    // BM25: idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * len / avgLen)), tf và len đã nhân trọng số field
+    private Map<String, Double> score(List<String> terms) {
+        Map<String, Double> scores = new HashMap<>();
+        int docCount = docTerms.size();
+        if (docCount == 0) {
+            return scores;
+        }
+        double avgLength = totalLength / docCount;
+        for (String term : terms) {
+            Map<String, Posting> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            int df = posting.size();
+            double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            for (Map.Entry<String, Posting> entry : posting.entrySet()) {
+                Posting p = entry.getValue();
+                double norm = K1 * (1 - B + B * p.length() / avgLength);
+                scores.merge(entry.getKey(), idf * p.tf() * (K1 + 1) / (p.tf() + norm), Double::sum);
+            }
+        }
+        return scores;
+    }
+
+    // Chỉ giữ k kết quả tốt nhất bằng min-heap thay vì sort toàn bộ
+    private List<Map.Entry<String, Double>> topK(Map<String, Double> scores, int k) {
+        Comparator<Map.Entry<String, Double>> byScore = Map.Entry.<String, Double>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+        PriorityQueue<Map.Entry<String, Double>> heap = new PriorityQueue<>(Math.max(1, k), byScore);
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (k > 0 && byScore.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<Map.Entry<String, Double>> top = new ArrayList<>(heap);
+        top.sort(byScore.reversed());
+        return top;
+    }
+
+    // Gọi khi giữ write lock; product null = đã xoá
+    private void reindex(String productId, Product product) {
+        totalLength -= remove(productId);
+        if (product != null && indexable(product)) {
+            totalLength += add(postings, docTerms, product);
+        }
+    }
+
+    private boolean indexable(Product product) {
+        return !Boolean.FALSE.equals(product.getIsActive());
+    }
+
+    // @return độ dài (có trọng số) của document vừa thêm
+    private float add(Map<String, Map<String, Posting>> target, Map<String, List<String>> terms, Product product) {
+        Map<String, Float> tf = new HashMap<>();
+        addField(tf, product.getName(), NAME_WEIGHT);
+        if (product.getTags() != null) {
+            product.getTags().forEach(tag -> addField(tf, tag, TAG_WEIGHT));
+        }
+        addField(tf, product.getShortDescription(), DESCRIPTION_WEIGHT);
+
+        float length = (float) tf.values().stream().mapToDouble(Float::doubleValue).sum();
+        tf.forEach((term, weight) -> target.computeIfAbsent(term, t -> new HashMap<>())
+                .put(product.getId(), new Posting(weight, length)));
+        terms.put(product.getId(), new ArrayList<>(tf.keySet()));
+        return length;
+    }
+
+    private void addField(Map<String, Float> tf, String text, float weight) {
+        for (String token : VietnameseText.tokenize(text)) {
+            tf.merge(token, weight, Float::sum);
+        }
+    }
+
+    // @return độ dài của document đã gỡ (0 nếu chưa có trong index)
+    private float remove(String productId) {
+        List<String> terms = docTerms.remove(productId);
+        if (terms == null) {
+            return 0;
+        }
+        float length = 0;
+        for (String term : terms) {
+            Map<String, Posting> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            Posting removed = posting.remove(productId);
+            if (removed != null) {
+                length = removed.length();
+            }
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        return length;
+    }
+
+    private record Posting(float tf, float length) {
+    }
+}
@@ -1,21 +1,47 @@
 package com.cook_iq.auth.service;
 
 import com.cook_iq.auth.dto.CreateProductRequest;
+import com.cook_iq.auth.dto.ProductDto;
 import com.cook_iq.auth.dto.UpdateProductRequest;
+import com.cook_iq.auth.event.ProductChangedEvent;
+import com.cook_iq.auth.event.ProductStockChangedEvent;
 import com.cook_iq.auth.model.Product;
 import com.cook_iq.auth.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
     private final ProductRepository productRepo;
+    private final InventoryLedger inventoryLedger;
+    private final ProductCache productCache;
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     // Tạo sản phẩm mới
     public Product createProduct(CreateProductRequest req) {
@@ -34,68 +60,240 @@ public class ProductService {
                 .isActive(true)
                 .createdAt(Instant.now())
                 .updatedAt(Instant.now())
+                .version(0L)
                 .build();
-        return productRepo.save(p);
+        Product saved = productRepo.save(p);
+        productCache.put(saved);
+        eventPublisher.publishEvent(new ProductChangedEvent(saved.getId(), saved));
+        return saved;
     }
 
-    // Cập nhật sản phẩm
+    // Cập nhật sản phẩm (một findAndModify: không ghi đè thay đổi tồn kho từ đơn hàng đang chạy song song)
     public Product updateProduct(String id, UpdateProductRequest req) {
-        Product p = productRepo.findById(id)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-
-        p.setName(req.getName());
-        p.setSlug(req.getSlug());
-        p.setShortDescription(req.getShortDescription());
-        p.setDescription(req.getDescription());
-        p.setPrice(req.getPrice());
-        p.setCurrency(req.getCurrency());
-        p.setCategoryId(req.getCategoryId());
-        p.setImages(req.getImages());
-        p.setStockQuantity(req.getStockQuantity());
-        p.setUnit(req.getUnit());
-        p.setTags(req.getTags());
-        p.setUpdatedAt(Instant.now());
+        Update update = new Update()
+                .set("name", req.getName())
+                .set("slug", req.getSlug())
+                .set("shortDescription", req.getShortDescription())
+                .set("description", req.getDescription())
+                .set("price", req.getPrice())
+                .set("currency", req.getCurrency())
+                .set("categoryId", req.getCategoryId())
+                .set("images", req.getImages())
+                .set("stockQuantity", req.getStockQuantity())
+                .set("unit", req.getUnit())
+                .set("tags", req.getTags())
+                .set("updatedAt", Instant.now())
+                .inc("version", 1);
+        // Sản phẩm hot: ghi đè tồn kho tuyệt đối trong lúc ledger khoá SKU, document mang seq mới nhất
+        Product p = inventoryLedger.isHot(id)
+                ? inventoryLedger.overwrite(id, req.getStockQuantity(), seq -> modify(id, update.set("ledgerSeq", seq)))
+                : modify(id, update);
+        productCache.put(p);
+        eventPublisher.publishEvent(new ProductChangedEvent(id, p));
+        return p;
+    }
 
-        return productRepo.save(p);
+    private Product modify(String id, Update update) {
+        Product p = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id)),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Product.class);
+        if (p == null) {
+            throw new RuntimeException("Product not found");
+        }
+        return p;
     }
 
     // Xóa sản phẩm
     public void deleteProduct(String id) {
         productRepo.deleteById(id);
+        productCache.invalidate(id);
+        eventPublisher.publishEvent(new ProductChangedEvent(id, null));
     }
 
-    // Cập nhật số lượng kho
+    // Cập nhật số lượng kho (không cho âm), atomic trên server
     public Product updateStock(String id, int delta) {
-        Product p = productRepo.findById(id)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
+        if (inventoryLedger.isHot(id)) {
+            // Sản phẩm hot: điều chỉnh trong ledger, lần flush kế tiếp ghi xuống Mongo
+            Product p = getProductById(id);
+            p.setStockQuantity(inventoryLedger.adjust(id, delta));
+            eventPublisher.publishEvent(new ProductStockChangedEvent(id, p.getStockQuantity()));
+            return p;
+        }
 
-        int newStock = p.getStockQuantity() + delta;
-        if (newStock < 0) newStock = 0;
-        p.setStockQuantity(newStock);
-        p.setUpdatedAt(Instant.now());
+        Instant now = Instant.now();
+        AggregationUpdate update = AggregationUpdate.from(List.of(context -> new Document("$set", new Document()
+                .append("stockQuantity", new Document("$max", List.of(0, new Document("$add", List.of("$stockQuantity", delta)))))
+                .append("version", new Document("$add", List.of(new Document("$ifNull", List.of("$version", 0)), 1)))
+                .append("updatedAt", now))));
+        Product p = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id)),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Product.class);
+        if (p == null) {
+            throw new RuntimeException("Product not found");
+        }
+        productCache.updateStock(id, p.getStockQuantity(), p.getVersion(), p.getUpdatedAt());
+        eventPublisher.publishEvent(new ProductStockChangedEvent(id, p.getStockQuantity()));
+        return p;
+    }
 
-        return productRepo.save(p);
+    // Danh sách sản phẩm (active), chỉ đọc các field được chọn (fields=card: dạng thẻ)
+    public Page<ProductDto> listProducts(Pageable pageable, String fields) {
+        return listProjected(Criteria.where("isActive").is(true), pageable, fields);
     }
 
-    // Lấy tất cả sản phẩm (active)
-    public Page<Product> getAllProducts(Pageable pageable) {
-        return productRepo.findByIsActiveTrue(pageable);
+    // Danh sách theo danh mục (nhiều id: danh mục và các danh mục con, xem CategoryService)
+    public Page<ProductDto> listProductsByCategories(Collection<String> categoryIds, Pageable pageable, String fields) {
+        return listProjected(byCategories(categoryIds), pageable, fields);
     }
 
     // Lấy sản phẩm theo id
     public Product getProductById(String id) {
-        return productRepo.findById(id)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
+        Product p = productCache.getById(id, key -> productRepo.findById(key).orElse(null));
+        if (p == null) {
+            throw new RuntimeException("Product not found");
+        }
+        return withLiveStock(p);
     }
 
     // Lấy sản phẩm theo slug
     public Product getProductBySlug(String slug) {
-        return productRepo.findBySlug(slug)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
+        Product p = productCache.getBySlug(slug, key -> productRepo.findBySlug(key).orElse(null));
+        if (p == null) {
+            throw new RuntimeException("Product not found");
+        }
+        return withLiveStock(p);
+    }
+
+    // Số sản phẩm và updatedAt mới nhất của các danh mục (index categoryId + updatedAt), dùng làm ETag.
+    // Sản phẩm hot đổi tồn kho trong ledger mà không đổi updatedAt nên tồn kho sống của chúng cũng vào stamp.
+    public CategoryStamp getCategoryStamp(Collection<String> categoryIds) {
+        long count = mongoTemplate.count(Query.query(byCategories(categoryIds)), Product.class);
+
+        Query latest = Query.query(byCategories(categoryIds))
+                .with(Sort.by(Sort.Direction.DESC, "updatedAt"))
+                .limit(1);
+        latest.fields().include("updatedAt").exclude("_id");
+        Product newest = mongoTemplate.findOne(latest, Product.class);
+        return new CategoryStamp(count, newest != null ? newest.getUpdatedAt() : null, liveStockTag(categoryIds));
+    }
+
+    /**
+     * @param liveStock tồn kho trong ledger của các sản phẩm hot thuộc danh mục, null nếu không có
+     */
+    public record CategoryStamp(long count, Instant lastUpdatedAt, String liveStock) {
+
+        // Last-Modified không phản ánh tồn kho trong ledger: có sản phẩm hot thì chỉ dựa vào ETag
+        public long lastModifiedMillis() {
+            return lastUpdatedAt == null || liveStock != null ? -1 : lastUpdatedAt.toEpochMilli();
+        }
+
+        public String tag() {
+            long updated = lastUpdatedAt != null ? lastUpdatedAt.toEpochMilli() : -1;
+            return count + "-" + updated + (liveStock != null ? "-" + liveStock : "");
+        }
+    }
+
+    private String liveStockTag(Collection<String> categoryIds) {
+        Set<String> hotIds = inventoryLedger.hotProductIds();
+        if (hotIds.isEmpty()) {
+            return null;
+        }
+        Query query = Query.query(Criteria.where("_id").in(hotIds).andOperator(byCategories(categoryIds)));
+        query.fields().include("_id");
+        List<String> ids = mongoTemplate.find(query, Product.class).stream().map(Product::getId).sorted().toList();
+        if (ids.isEmpty()) {
+            return null;
+        }
+        StringBuilder stock = new StringBuilder();
+        ids.forEach(id -> stock.append(id).append(':').append(inventoryLedger.available(id)).append(','));
+        return Integer.toHexString(stock.toString().hashCode());
+    }
+
+    private Criteria byCategories(Collection<String> categoryIds) {
+        return categoryIds.size() == 1
+                ? Criteria.where("categoryId").is(categoryIds.iterator().next())
+                : Criteria.where("categoryId").in(categoryIds);
+    }
+
+    /**
+     * Query có projection: mặc định mọi field trong {@link ProductDto#ALL_FIELDS} (client cũ vẫn đọc categoryId, mô tả),
+     * fields=card chỉ lấy field của thẻ (ảnh đầu tiên qua $slice), fields=name,price,... để chọn field khác.
+     */
+    private Page<ProductDto> listProjected(Criteria criteria, Pageable pageable, String fields) {
+        boolean card = ProductDto.CARD.equals(fields);
+        List<String> selected = card ? ProductDto.CARD_FIELDS
+                : fields == null || fields.isBlank() ? ProductDto.ALL_FIELDS
+                : Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(f -> !f.isEmpty())
+                .distinct()
+                .toList();
+        for (String field : selected) {
+            if (!ProductDto.ALL_FIELDS.contains(field)) {
+                throw new RuntimeException("Field không hỗ trợ: " + field);
+            }
+        }
+
+        Query query = Query.query(criteria).with(pageable);
+        selected.forEach(field -> query.fields().include(field));
+        if (card) {
+            query.fields().slice("images", 1);
+        }
+        List<ProductDto> content = mongoTemplate.find(query, ProductDto.class,
+                mongoTemplate.getCollectionName(Product.class));
+        if (selected.contains("stockQuantity")) {
+            content.forEach(this::withLiveStock);
+        }
+        return PageableExecutionUtils.getPage(content, pageable,
+                () -> mongoTemplate.count(Query.query(criteria), Product.class));
+    }
+
+    // Các id trong candidates không còn document (đã xoá, kể cả trên node khác); chỉ đọc _id của collection
+    public Set<String> findDeleted(Collection<String> candidates) {
+        Set<String> deleted = new HashSet<>(candidates);
+        if (deleted.isEmpty()) {
+            return deleted;
+        }
+        Query query = new Query();
+        query.fields().include("_id");
+        try (Stream<Product> products = mongoTemplate.stream(query, Product.class)) {
+            products.forEach(p -> deleted.remove(p.getId()));
+        }
+        return deleted;
+    }
+
+    // Thẻ sản phẩm theo danh sách id (giữ nguyên thứ tự, bỏ id không còn tồn tại), dùng cho trang kết quả tìm kiếm
+    public List<ProductDto> getCards(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Query query = Query.query(Criteria.where("_id").in(ids));
+        ProductDto.CARD_FIELDS.forEach(field -> query.fields().include(field));
+        query.fields().slice("images", 1);
+        Map<String, ProductDto> byId = new HashMap<>();
+        mongoTemplate.find(query, ProductDto.class, mongoTemplate.getCollectionName(Product.class))
+                .forEach(dto -> byId.put(dto.getId(), withLiveStock(dto)));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    private ProductDto withLiveStock(ProductDto dto) {
+        Integer available = inventoryLedger.available(dto.getId());
+        if (available != null) {
+            dto.setStockQuantity(available);
+        }
+        return dto;
     }
 
-    // Lấy sản phẩm theo danh mục
-    public Page<Product> getProductsByCategory(String categoryId, Pageable pageable) {
-        return productRepo.findByCategoryId(categoryId, pageable);
+    // Tồn kho của sản phẩm hot trên Mongo có thể trễ một nhịp flush, lấy số trong ledger
+    private Product withLiveStock(Product p) {
+        Integer available = inventoryLedger.available(p.getId());
+        if (available != null) {
+            p.setStockQuantity(available);
+        }
+        return p;
     }
 }
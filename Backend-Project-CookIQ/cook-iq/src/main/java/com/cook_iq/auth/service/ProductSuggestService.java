@@ -0,0 +1,203 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.Suggestion;
+import com.cook_iq.auth.event.ProductChangedEvent;
+import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.model.SalesRollup;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Gợi ý khi gõ (typeahead) từ {@link SuggestionTrie} trong bộ nhớ trên tên sản phẩm và tag đã bỏ dấu.
+ * Mỗi tên được index từ đầu mọi từ ("ca chua da lat", "chua da lat", ...) nên gõ "da l" cũng ra "Cà chua Đà Lạt".
+ * Xếp hạng theo số lượng bán trong app.typeahead.popularity-days ngày gần nhất (sales_rollups), tag theo tổng các sản phẩm.
+ * Request chỉ đọc snapshot hiện tại qua AtomicReference (không khoá); thay đổi sản phẩm được gom lại
+ * và dựng snapshot mới sau app.typeahead.rebuild-delay-ms rồi thay nguyên khối.
+ */
+@Slf4j
+@Service
+public class ProductSuggestService {
+
+    // Giới hạn số từ đầu tên được index để tên rất dài không làm phình trie
+    private static final int MAX_WORD_STARTS = 8;
+
+    private final MongoTemplate mongoTemplate;
+    private final int topK;
+    private final int popularityDays;
+    private final Timer suggestTimer;
+
+    // productId → dữ liệu cần cho gợi ý; nguồn để dựng snapshot mà không phải đọc lại Mongo
+    private final Map<String, Entry> products = new ConcurrentHashMap<>();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile Map<String, Long> popularity = Map.of();
+
+    public ProductSuggestService(MongoTemplate mongoTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.typeahead.top-k:10}") int topK,
+                                 @Value("${app.typeahead.popularity-days:30}") int popularityDays) {
+        this.mongoTemplate = mongoTemplate;
+        this.topK = topK;
+        this.popularityDays = popularityDays;
+        this.suggestTimer = Timer.builder("products.suggest.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        Query query = new Query();
+        query.fields().include("name", "slug", "tags", "isActive");
+        try (Stream<Product> stream = mongoTemplate.stream(query, Product.class)) {
+            stream.forEach(this::apply);
+        }
+        popularity = loadPopularity();
+        rebuild();
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.product() == null) {
+            products.remove(event.productId());
+        } else {
+            apply(event.product());
+        }
+        dirty.set(true);
+    }
+
+    // Gom các thay đổi trong khoảng delay thành một lần dựng lại
+    @Scheduled(fixedDelayString = "${app.typeahead.rebuild-delay-ms:1000}")
+    public void rebuildIfDirty() {
+        if (dirty.getAndSet(false)) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.typeahead.popularity-refresh-ms:600000}",
+            initialDelayString = "${app.typeahead.popularity-refresh-ms:600000}")
+    public void refreshPopularity() {
+        popularity = loadPopularity();
+        rebuild();
+    }
+
+    /**
+     * @param q     phần người dùng đã gõ (có dấu hay không đều được)
+     * @param limit số gợi ý, tối đa app.typeahead.top-k
+     */
+    public List<Suggestion> suggest(String q, int limit) {
+        long start = System.nanoTime();
+        Snapshot current = snapshot.get();
+        int[] targets = current.trie().complete(normalize(q));
+        int n = Math.min(Math.max(limit, 0), targets.length);
+        List<Suggestion> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(current.suggestions().get(targets[i]));
+        }
+        suggestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    // Dựng snapshot mới từ products + popularity rồi thay một lần; đọc song song vẫn thấy bản cũ trọn vẹn
+    private synchronized void rebuild() {
+        Map<String, Long> weights = popularity;
+        List<Suggestion> suggestions = new ArrayList<>();
+        List<Long> suggestionWeights = new ArrayList<>();
+        List<SuggestionTrie.Entry> keys = new ArrayList<>();
+        Map<String, Integer> tagTargets = new HashMap<>();
+
+        for (Map.Entry<String, Entry> e : products.entrySet()) {
+            Entry product = e.getValue();
+            if (!product.active() || product.name() == null || product.name().isBlank()) {
+                continue;
+            }
+            // +1 để sản phẩm chưa bán vẫn góp vào trọng số của tag
+            long weight = weights.getOrDefault(e.getKey(), 0L) + 1;
+            int target = suggestions.size();
+            suggestions.add(new Suggestion(Suggestion.PRODUCT, product.name(), e.getKey(), product.slug()));
+            suggestionWeights.add(weight);
+            addWordStarts(keys, product.name(), target);
+
+            for (String tag : product.tags()) {
+                Integer tagTarget = tagTargets.get(tag);
+                if (tagTarget == null) {
+                    tagTarget = suggestions.size();
+                    tagTargets.put(tag, tagTarget);
+                    suggestions.add(new Suggestion(Suggestion.TAG, tag, null, null));
+                    suggestionWeights.add(0L);
+                    addWordStarts(keys, tag, tagTarget);
+                }
+                suggestionWeights.set(tagTarget, suggestionWeights.get(tagTarget) + weight);
+            }
+        }
+
+        Comparator<Integer> rank = Comparator.<Integer>comparingLong(suggestionWeights::get).reversed()
+                .thenComparingInt(t -> suggestions.get(t).text().length())
+                .thenComparing(t -> suggestions.get(t).text());
+        snapshot.set(new Snapshot(SuggestionTrie.build(keys, rank, topK), List.copyOf(suggestions)));
+    }
+
+    private void addWordStarts(List<SuggestionTrie.Entry> keys, String text, int target) {
+        List<String> words = VietnameseText.tokenize(text);
+        for (int i = 0; i < Math.min(words.size(), MAX_WORD_STARTS); i++) {
+            keys.add(new SuggestionTrie.Entry(String.join(" ", words.subList(i, words.size())), target));
+        }
+    }
+
+    // Cùng cách tách từ như lúc index; giữ khoảng trắng cuối để "ca " không khớp "cam"
+    private String normalize(String q) {
+        String key = String.join(" ", VietnameseText.tokenize(q));
+        return !key.isEmpty() && q != null && Character.isWhitespace(q.charAt(q.length() - 1)) ? key + " " : key;
+    }
+
+    private void apply(Product p) {
+        List<String> tags = p.getTags() == null ? List.of() : p.getTags().stream()
+                .filter(t -> t != null && !t.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+        products.put(p.getId(), new Entry(p.getName(), p.getSlug(), tags, !Boolean.FALSE.equals(p.getIsActive())));
+    }
+
+    // Tổng số lượng bán theo sản phẩm trên các bucket ngày gần nhất (index granularity + bucketStart)
+    private Map<String, Long> loadPopularity() {
+        Query query = Query.query(Criteria.where("granularity").is(SalesRollup.DAY)
+                .and("bucketStart").gte(LocalDate.now().minusDays(popularityDays).atStartOfDay()));
+        query.fields().include("unitsByProduct");
+        Map<String, Long> units = new HashMap<>();
+        for (SalesRollup bucket : mongoTemplate.find(query, SalesRollup.class)) {
+            if (bucket.getUnitsByProduct() != null) {
+                bucket.getUnitsByProduct().forEach((productId, count) -> units.merge(productId, count, Long::sum));
+            }
+        }
+        units.values().removeIf(count -> count <= 0);
+        return units;
+    }
+
+    private record Entry(String name, String slug, List<String> tags, boolean active) {
+    }
+
+    private record Snapshot(SuggestionTrie trie, List<Suggestion> suggestions) {
+        static final Snapshot EMPTY = new Snapshot(SuggestionTrie.build(List.of(), (a, b) -> 0, 0), List.of());
+    }
+}
@@ -0,0 +1,133 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.event.UserChangedEvent;
+import com.cook_iq.auth.exception.UnauthorizedException;
+import com.cook_iq.auth.model.RefreshToken;
+import com.cook_iq.auth.model.User;
+import com.cook_iq.auth.repository.RefreshTokenRepository;
+import com.cook_iq.auth.security.TokenVersionService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Refresh token xoay vòng: mỗi lần /api/auth/refresh thì token cũ bị đánh dấu used và cấp token mới
+ * cùng family. Nếu một token đã used bị gửi lại (bị lộ / replay) thì thu hồi cả family.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RefreshTokenService {
+
+    private final RefreshTokenRepository refreshTokenRepo;
+    private final MongoTemplate mongoTemplate;
+    private final JwtService jwtService;
+    private final TokenVersionService tokenVersionService;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        // Mongo tự dọn token hết hạn
+        mongoTemplate.indexOps(RefreshToken.class)
+                .createIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(0));
+        mongoTemplate.indexOps(RefreshToken.class)
+                .createIndex(new Index().on("familyId", Sort.Direction.ASC));
+        mongoTemplate.indexOps(RefreshToken.class)
+                .createIndex(new Index().on("userId", Sort.Direction.ASC));
+    }
+
+    // Cấp refresh token cho một lần login mới (family mới)
+    public String issue(User user) {
+        long tokenVersion = user.getTokenVersion() != null ? user.getTokenVersion() : 0L;
+        return issue(user.getId(), tokenVersion, UUID.randomUUID().toString());
+    }
+
+    // Đổi refresh token lấy refresh token mới cùng family; token cũ không dùng lại được nữa
+    public Rotation rotate(String refreshToken) {
+        Claims claims;
+        try {
+            claims = jwtService.parseRefreshClaims(refreshToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new UnauthorizedException("Refresh token không hợp lệ hoặc đã hết hạn");
+        }
+
+        String tokenId = claims.getId();
+        String familyId = claims.get(JwtService.CLAIM_FAMILY, String.class);
+        String userId = claims.get(JwtService.CLAIM_USER_ID, String.class);
+        Number tokenVersion = claims.get(JwtService.CLAIM_TOKEN_VERSION, Number.class);
+
+        // Đánh dấu used một cách atomic: chỉ một request thắng
+        RefreshToken current = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(tokenId).and("used").is(false)),
+                new Update().set("used", true),
+                FindAndModifyOptions.options().returnNew(true),
+                RefreshToken.class);
+
+        if (current == null) {
+            if (refreshTokenRepo.existsById(tokenId)) {
+                // Token đã dùng rồi mà bị gửi lại → coi như bị đánh cắp, huỷ cả family
+                log.warn("Phát hiện refresh token bị dùng lại, thu hồi family {} của user {}", familyId, userId);
+                refreshTokenRepo.deleteByFamilyId(familyId);
+            }
+            throw new UnauthorizedException("Refresh token đã bị thu hồi");
+        }
+
+        long currentVersion = tokenVersionService.currentVersion(userId);
+        if (tokenVersion == null || tokenVersion.longValue() != currentVersion) {
+            refreshTokenRepo.deleteByFamilyId(familyId);
+            throw new UnauthorizedException("Phiên đăng nhập đã hết hiệu lực");
+        }
+
+        return new Rotation(userId, issue(userId, currentVersion, familyId));
+    }
+
+    // Logout: huỷ cả family của refresh token (bỏ qua nếu token không hợp lệ)
+    public void revoke(String refreshToken) {
+        try {
+            Claims claims = jwtService.parseRefreshClaims(refreshToken);
+            refreshTokenRepo.deleteByFamilyId(claims.get(JwtService.CLAIM_FAMILY, String.class));
+        } catch (JwtException | IllegalArgumentException e) {
+            // Token hỏng / hết hạn thì cũng không còn gì để thu hồi
+        }
+    }
+
+    // User bị xoá → xoá hết refresh token của user
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.newEmail() == null) {
+            refreshTokenRepo.deleteByUserId(event.userId());
+        }
+    }
+
+    private String issue(String userId, long tokenVersion, String familyId) {
+        String tokenId = UUID.randomUUID().toString();
+        Date expiresAt = jwtService.nextRefreshExpiry();
+
+        refreshTokenRepo.insert(RefreshToken.builder()
+                .id(tokenId)
+                .familyId(familyId)
+                .userId(userId)
+                .used(false)
+                .createdAt(new Date())
+                .expiresAt(expiresAt)
+                .build());
+
+        return jwtService.generateRefreshToken(userId, tokenVersion, familyId, tokenId, expiresAt);
+    }
+
+    public record Rotation(String userId, String refreshToken) {
+    }
+}
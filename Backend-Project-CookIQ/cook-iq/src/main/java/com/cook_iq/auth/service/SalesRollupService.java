@@ -0,0 +1,259 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.SalesDashboard;
+import com.cook_iq.auth.event.OrderStatusChangedEvent;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import com.cook_iq.auth.model.SalesRollup;
+import com.cook_iq.auth.repository.ProductRepository;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Số liệu dashboard cộng dồn sẵn trong sales_rollups: mỗi lần đơn được tạo / đổi trạng thái chỉ $inc
+ * vào 2 document (giờ + ngày của createdAt). Dashboard đọc đúng số bucket trong khoảng xem,
+ * không phải quét đơn hàng. {@link #rebuild()} dựng lại toàn bộ từ collection orders khi cần backfill:
+ * dựng vào collection tạm rồi rename thay bản cũ (dashboard không bao giờ trống), sau đó tính lại
+ * những bucket có đơn đổi trạng thái trong lúc dựng để $inc chen giữa không bị mất.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SalesRollupService {
+
+    private static final DateTimeFormatter HOUR_KEY = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH");
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductRepository productRepo;
+
+    // Bucket bị $inc trong lúc rebuild đang chạy: key → bucketStart
+    private final Map<String, LocalDateTime> touchedDuringRebuild = new ConcurrentHashMap<>();
+    private volatile boolean rebuilding;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        ensureIndexes(mongoTemplate.getCollectionName(SalesRollup.class));
+    }
+
+    private void ensureIndexes(String collection) {
+        mongoTemplate.indexOps(collection)
+                .createIndex(new Index().on("granularity", Sort.Direction.ASC).on("bucketStart", Sort.Direction.ASC));
+    }
+
+    // Lỗi cập nhật rollup không được làm hỏng thao tác đơn hàng; chạy rebuild để sửa lệch
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        Order order = event.order();
+        if (order.getCreatedAt() == null) {
+            return;
+        }
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SalesRollup.class);
+            for (String granularity : List.of(SalesRollup.HOUR, SalesRollup.DAY)) {
+                LocalDateTime bucketStart = bucketStart(order.getCreatedAt(), granularity);
+                bulk.upsert(Query.query(Criteria.where("_id").is(key(granularity, bucketStart))),
+                        delta(order, event.oldStatus(), event.newStatus())
+                                .setOnInsert("granularity", granularity)
+                                .setOnInsert("bucketStart", bucketStart));
+                if (rebuilding) {
+                    touchedDuringRebuild.put(key(granularity, bucketStart), bucketStart);
+                }
+            }
+            bulk.execute();
+        } catch (RuntimeException e) {
+            log.warn("Không cập nhật được sales rollup cho đơn {}", order.getId(), e);
+        }
+    }
+
+    // Dựng lại toàn bộ rollup từ orders (đọc bằng cursor, chỉ các field cần thiết)
+    public synchronized int rebuild() {
+        String live = mongoTemplate.getCollectionName(SalesRollup.class);
+        String staging = live + "_rebuild";
+        Map<String, SalesRollup> rollups = new HashMap<>();
+        touchedDuringRebuild.clear();
+        rebuilding = true;
+        try {
+            try (Stream<Order> orders = mongoTemplate.stream(ordersQuery(new Criteria()), Order.class)) {
+                for (Order order : (Iterable<Order>) orders::iterator) {
+                    for (String granularity : List.of(SalesRollup.HOUR, SalesRollup.DAY)) {
+                        accumulate(rollups, granularity, order);
+                    }
+                }
+            }
+
+            // Collection tạm đủ index rồi rename đè lên bản đang dùng (một lệnh, không có lúc trống)
+            mongoTemplate.dropCollection(staging);
+            mongoTemplate.createCollection(staging);
+            ensureIndexes(staging);
+            if (!rollups.isEmpty()) {
+                mongoTemplate.insert(rollups.values(), staging);
+            }
+            mongoTemplate.getCollection(staging).renameCollection(
+                    new MongoNamespace(mongoTemplate.getDb().getName(), live),
+                    new RenameCollectionOptions().dropTarget(true));
+        } finally {
+            // $inc sau rename đã vào bản mới; chỉ những bucket bị $inc trước đó mới cần tính lại
+            rebuilding = false;
+        }
+
+        Map<String, LocalDateTime> touched = new HashMap<>(touchedDuringRebuild);
+        touchedDuringRebuild.clear();
+        touched.forEach((key, bucketStart) -> recompute(key.substring(0, key.indexOf(':')), bucketStart));
+        log.info("Đã dựng lại {} sales rollup, tính lại {} bucket thay đổi trong lúc dựng", rollups.size(), touched.size());
+        return rollups.size();
+    }
+
+    // Thay một bucket bằng số liệu tính lại từ các đơn có createdAt trong bucket đó
+    private void recompute(String granularity, LocalDateTime bucketStart) {
+        LocalDateTime bucketEnd = SalesRollup.HOUR.equals(granularity)
+                ? bucketStart.plusHours(1)
+                : bucketStart.plusDays(1);
+        Map<String, SalesRollup> rollups = new HashMap<>();
+        try (Stream<Order> orders = mongoTemplate.stream(
+                ordersQuery(Criteria.where("createdAt").gte(bucketStart).lt(bucketEnd)), Order.class)) {
+            orders.forEach(order -> accumulate(rollups, granularity, order));
+        }
+        String key = key(granularity, bucketStart);
+        mongoTemplate.save(rollups.getOrDefault(key, newRollup(key, granularity, bucketStart)));
+    }
+
+    private Query ordersQuery(Criteria criteria) {
+        Query query = Query.query(criteria);
+        query.fields().include("createdAt", "status", "totalAmount", "items.productId", "items.quantity");
+        return query;
+    }
+
+    /**
+     * @param from        ngày bắt đầu (bao gồm)
+     * @param to          ngày kết thúc (bao gồm)
+     * @param granularity HOUR | DAY
+     * @param top         số sản phẩm bán chạy trả về
+     */
+    public SalesDashboard dashboard(LocalDate from, LocalDate to, String granularity, int top) {
+        List<SalesRollup> buckets = mongoTemplate.find(
+                Query.query(Criteria.where("granularity").is(granularity)
+                                .and("bucketStart").gte(from.atStartOfDay()).lt(to.plusDays(1).atStartOfDay()))
+                        .with(Sort.by(Sort.Direction.ASC, "bucketStart")),
+                SalesRollup.class);
+
+        double revenue = 0;
+        long orderCount = 0;
+        Map<String, Long> statusCounts = new HashMap<>();
+        Map<String, Long> units = new HashMap<>();
+        for (SalesRollup bucket : buckets) {
+            revenue += bucket.getRevenue() != null ? bucket.getRevenue() : 0;
+            orderCount += bucket.getOrderCount() != null ? bucket.getOrderCount() : 0;
+            if (bucket.getStatusCounts() != null) {
+                bucket.getStatusCounts().forEach((status, count) -> statusCounts.merge(status, count, Long::sum));
+            }
+            if (bucket.getUnitsByProduct() != null) {
+                bucket.getUnitsByProduct().forEach((productId, count) -> units.merge(productId, count, Long::sum));
+            }
+        }
+
+        List<Map.Entry<String, Long>> best = units.entrySet().stream()
+                .filter(e -> e.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(top)
+                .toList();
+        Map<String, String> names = new HashMap<>();
+        productRepo.findAllById(best.stream().map(Map.Entry::getKey).toList())
+                .forEach(p -> names.put(p.getId(), p.getName()));
+        List<SalesDashboard.ProductSales> topProducts = best.stream()
+                .map(e -> new SalesDashboard.ProductSales(e.getKey(), names.get(e.getKey()), e.getValue()))
+                .collect(Collectors.toList());
+
+        return new SalesDashboard(buckets, revenue, orderCount, statusCounts, topProducts);
+    }
+
+    private Update delta(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+        Update update = new Update();
+        if (oldStatus == null) {
+            update.inc("orderCount", 1);
+        } else {
+            update.inc("statusCounts." + oldStatus.name(), -1);
+        }
+        update.inc("statusCounts." + newStatus.name(), 1);
+
+        // Vào / ra trạng thái CANCELLED thì trừ / cộng lại doanh thu và số lượng bán
+        int sign = (countsAsSale(newStatus) ? 1 : 0) - (oldStatus != null && countsAsSale(oldStatus) ? 1 : 0);
+        if (sign != 0) {
+            update.inc("revenue", sign * (order.getTotalAmount() != null ? order.getTotalAmount() : 0));
+            if (order.getItems() != null) {
+                for (Order.OrderItem item : order.getItems()) {
+                    update.inc("unitsByProduct." + item.getProductId(), sign * item.getQuantity());
+                }
+            }
+        }
+        return update;
+    }
+
+    private void accumulate(Map<String, SalesRollup> rollups, String granularity, Order order) {
+        if (order.getCreatedAt() == null || order.getStatus() == null) {
+            return;
+        }
+        LocalDateTime bucketStart = bucketStart(order.getCreatedAt(), granularity);
+        String key = key(granularity, bucketStart);
+        accumulate(rollups.computeIfAbsent(key, id -> newRollup(id, granularity, bucketStart)), order);
+    }
+
+    private SalesRollup newRollup(String id, String granularity, LocalDateTime bucketStart) {
+        return SalesRollup.builder()
+                .id(id)
+                .granularity(granularity)
+                .bucketStart(bucketStart)
+                .build();
+    }
+
+    private void accumulate(SalesRollup rollup, Order order) {
+        rollup.setOrderCount(rollup.getOrderCount() + 1);
+        rollup.getStatusCounts().merge(order.getStatus().name(), 1L, Long::sum);
+        if (countsAsSale(order.getStatus())) {
+            rollup.setRevenue(rollup.getRevenue() + (order.getTotalAmount() != null ? order.getTotalAmount() : 0));
+            if (order.getItems() != null) {
+                for (Order.OrderItem item : order.getItems()) {
+                    rollup.getUnitsByProduct().merge(item.getProductId(), item.getQuantity().longValue(), Long::sum);
+                }
+            }
+        }
+    }
+
+    private boolean countsAsSale(OrderStatus status) {
+        return status != OrderStatus.CANCELLED;
+    }
+
+    private LocalDateTime bucketStart(LocalDateTime createdAt, String granularity) {
+        return SalesRollup.HOUR.equals(granularity)
+                ? createdAt.truncatedTo(ChronoUnit.HOURS)
+                : createdAt.truncatedTo(ChronoUnit.DAYS);
+    }
+
+    private String key(String granularity, LocalDateTime bucketStart) {
+        return granularity + ":" + (SalesRollup.HOUR.equals(granularity)
+                ? HOUR_KEY.format(bucketStart)
+                : bucketStart.toLocalDate().toString());
+    }
+}
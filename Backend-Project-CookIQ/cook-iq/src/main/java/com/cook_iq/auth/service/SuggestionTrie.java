@@ -0,0 +1,171 @@
+package com.cook_iq.auth.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Radix trie bất biến cho gợi ý theo tiền tố: cạnh gộp chuỗi ký tự, mọi node lưu trong mảng nguyên thuỷ.
+ * Mỗi node giữ sẵn top-k target của cả cây con, nên tra cứu chỉ là đi theo tiền tố, không duyệt cây con.
+ * Không đổi sau khi dựng nên đọc song song không cần khoá; khi dữ liệu đổi thì dựng bản mới và thay cả cây.
+ */
+final class SuggestionTrie {
+
+    private static final int[] NONE = new int[0];
+
+    private final char[] labels;
+    private final int[] labelStart;
+    private final int[] labelEnd;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[][] top;
+
+    /**
+     * @param key    chuỗi đã bỏ dấu
+     * @param target chỉ số của gợi ý (do bên gọi quản lý); nhiều key có thể trỏ cùng một target
+     */
+    record Entry(String key, int target) {
+    }
+
+    private SuggestionTrie(Builder builder) {
+        this.labels = builder.labels.toString().toCharArray();
+        int n = builder.labelStart.size();
+        this.labelStart = toArray(builder.labelStart);
+        this.labelEnd = toArray(builder.labelEnd);
+        this.firstChild = toArray(builder.firstChild);
+        this.nextSibling = toArray(builder.nextSibling);
+        this.top = builder.top.toArray(new int[n][]);
+    }
+
+    /**
+     * @param rank thứ tự xếp hạng giữa các target (tốt nhất trước)
+     * @param k    số target giữ lại ở mỗi node
+     */
+    static SuggestionTrie build(List<Entry> entries, Comparator<Integer> rank, int k) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::key));
+        Builder builder = new Builder(sorted, rank, k);
+        if (!sorted.isEmpty()) {
+            builder.node(0, sorted.size(), 0);
+        }
+        return new SuggestionTrie(builder);
+    }
+
+    int nodeCount() {
+        return labelStart.length;
+    }
+
+    // Các target khớp tiền tố (đã bỏ dấu), tốt nhất trước; mảng trả về dùng chung, không được sửa
+    int[] complete(String prefix) {
+        if (labelStart.length == 0) {
+            return NONE;
+        }
+        int node = 0;
+        int i = 0;
+        while (true) {
+            for (int j = labelStart[node]; j < labelEnd[node]; j++, i++) {
+                if (i == prefix.length()) {
+                    return top[node];
+                }
+                if (labels[j] != prefix.charAt(i)) {
+                    return NONE;
+                }
+            }
+            if (i == prefix.length()) {
+                return top[node];
+            }
+            node = child(node, prefix.charAt(i));
+            if (node < 0) {
+                return NONE;
+            }
+        }
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (labels[labelStart[child]] == c) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static final class Builder {
+        final List<Entry> entries;
+        final Comparator<Integer> rank;
+        final int k;
+
+        final StringBuilder labels = new StringBuilder();
+        final List<Integer> labelStart = new ArrayList<>();
+        final List<Integer> labelEnd = new ArrayList<>();
+        final List<Integer> firstChild = new ArrayList<>();
+        final List<Integer> nextSibling = new ArrayList<>();
+        final List<int[]> top = new ArrayList<>();
+
+        Builder(List<Entry> entries, Comparator<Integer> rank, int k) {
+            this.entries = entries;
+            this.rank = rank;
+            this.k = k;
+        }
+
+        /**
+         * Dựng node cho các key [lo, hi) đã sort, có chung {@code depth} ký tự đầu với node cha.
+         * Nhãn của node là phần chung dài nhất còn lại (key đầu và key cuối của khoảng đã sort).
+         */
+        int node(int lo, int hi, int depth) {
+            String first = entries.get(lo).key();
+            int end = commonPrefix(first, entries.get(hi - 1).key());
+
+            int node = labelStart.size();
+            labelStart.add(labels.length());
+            labels.append(first, depth, end);
+            labelEnd.add(labels.length());
+            firstChild.add(-1);
+            nextSibling.add(-1);
+            top.add(NONE);
+
+            List<Integer> candidates = new ArrayList<>();
+            while (lo < hi && entries.get(lo).key().length() == end) {
+                candidates.add(entries.get(lo).target());
+                lo++;
+            }
+
+            int previous = -1;
+            while (lo < hi) {
+                char c = entries.get(lo).key().charAt(end);
+                int groupEnd = lo;
+                while (groupEnd < hi && entries.get(groupEnd).key().charAt(end) == c) {
+                    groupEnd++;
+                }
+                int child = node(lo, groupEnd, end);
+                if (previous < 0) {
+                    firstChild.set(node, child);
+                } else {
+                    nextSibling.set(previous, child);
+                }
+                previous = child;
+                for (int target : top.get(child)) {
+                    candidates.add(target);
+                }
+                lo = groupEnd;
+            }
+
+            top.set(node, candidates.stream().distinct().sorted(rank).limit(k)
+                    .mapToInt(Integer::intValue).toArray());
+            return node;
+        }
+
+        private static int commonPrefix(String a, String b) {
+            int max = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < max && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.cook_iq.auth.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timing wheel phân cấp: tầng 0 có wheelSize ô, mỗi ô tickMs; tầng i mỗi ô rộng tickMs * wheelSize^i.
+ * Thêm / huỷ O(1), mỗi tick chỉ chạm đúng một ô (cộng các ô tầng trên đến lượt hạ xuống),
+ * nên không phải quét toàn bộ timer. Tầng mới được tạo khi có deadline xa hơn tầng cao nhất.
+ * Không thread-safe: chủ sở hữu tự đồng bộ.
+ *
+ * @param <T> dữ liệu đi kèm timer
+ */
+class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<Level> levels = new ArrayList<>();
+    private final Map<String, Timer<T>> timers = new HashMap<>();
+    private final List<T> ready = new ArrayList<>();
+    private long currentTime;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMs - Math.floorMod(startMs, tickMs);
+        levels.add(new Level(tickMs));
+    }
+
+    int size() {
+        return timers.size() + ready.size();
+    }
+
+    boolean contains(String key) {
+        return timers.containsKey(key);
+    }
+
+    // Thêm (hoặc thay) timer theo key
+    void add(String key, long deadlineMs, T payload) {
+        cancel(key);
+        place(new Timer<>(key, deadlineMs, payload));
+    }
+
+    boolean cancel(String key) {
+        Timer<T> timer = timers.remove(key);
+        if (timer == null) {
+            return false;
+        }
+        levels.get(timer.level).slots[timer.slot].remove(key);
+        return true;
+    }
+
+    /**
+     * Quay bánh xe đến nowMs.
+     * @return dữ liệu của các timer đã tới hạn (deadline < thời điểm tick hiện tại)
+     */
+    List<T> advance(long nowMs) {
+        while (currentTime + tickMs <= nowMs) {
+            // Ô vừa trôi qua của tầng 0: mọi timer trong đó đã tới hạn.
+            // Phải làm sạch trước khi hạ tầng, vì ô này sẽ được dùng lại cho bucket xa nhất.
+            Map<String, Timer<T>> bucket = levels.get(0).slots[(int) Math.floorMod(currentTime / tickMs, (long) wheelSize)];
+            for (Timer<T> timer : bucket.values()) {
+                timers.remove(timer.key);
+                ready.add(timer.payload);
+            }
+            bucket.clear();
+            currentTime += tickMs;
+            // Tầng trên đến ranh giới ô → hạ các timer của ô đó xuống tầng thấp hơn (từ trên xuống)
+            for (int i = levels.size() - 1; i >= 1; i--) {
+                Level level = levels.get(i);
+                if (currentTime % level.tickMs == 0) {
+                    cascade(level, (int) Math.floorMod(currentTime / level.tickMs, (long) wheelSize));
+                }
+            }
+        }
+        List<T> due = new ArrayList<>(ready);
+        ready.clear();
+        return due;
+    }
+
+    private void cascade(Level level, int slot) {
+        List<Timer<T>> moving = new ArrayList<>(level.slots[slot].values());
+        level.slots[slot].clear();
+        for (Timer<T> timer : moving) {
+            timers.remove(timer.key);
+            place(timer);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        // Ô hiện tại của tầng 0 đã bắt đầu, deadline trước đó coi như tới hạn ngay
+        if (Math.floorDiv(timer.deadline, tickMs) < currentTime / tickMs) {
+            ready.add(timer.payload);
+            return;
+        }
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                levels.add(new Level(levels.get(i - 1).tickMs * wheelSize));
+            }
+            Level level = levels.get(i);
+            long bucket = Math.floorDiv(timer.deadline, level.tickMs);
+            if (bucket - currentTime / level.tickMs < wheelSize) {
+                timer.level = i;
+                timer.slot = (int) Math.floorMod(bucket, (long) wheelSize);
+                level.slots[timer.slot].put(timer.key, timer);
+                timers.put(timer.key, timer);
+                return;
+            }
+        }
+    }
+
+    private final class Level {
+        final long tickMs;
+        final Map<String, Timer<T>>[] slots;
+
+        @SuppressWarnings("unchecked")
+        Level(long tickMs) {
+            this.tickMs = tickMs;
+            this.slots = new Map[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                slots[i] = new LinkedHashMap<>();
+            }
+        }
+    }
+
+    private static final class Timer<T> {
+        final String key;
+        final long deadline;
+        final T payload;
+        int level;
+        int slot;
+
+        Timer(String key, long deadline, T payload) {
+            this.key = key;
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+    }
+}
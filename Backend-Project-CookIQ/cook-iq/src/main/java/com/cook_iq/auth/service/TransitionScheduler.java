@@ -0,0 +1,130 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.ScheduledTransition;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Bộ hẹn giờ chuyển trạng thái: timer nằm trong timing wheel ở bộ nhớ, đồng thời lưu ở
+ * collection scheduled_transitions để dựng lại sau khi khởi động lại.
+ * Mỗi tick chỉ xử lý các timer tới hạn, không quét toàn bộ đơn hàng.
+ * Handler phải idempotent (chuyển có điều kiện theo fromStatus): timer có thể chạy lại sau restart.
+ */
+@Slf4j
+@Service
+public class TransitionScheduler {
+
+    private final MongoTemplate mongoTemplate;
+    private final long retryDelayMs;
+    private final TimingWheel<ScheduledTransition> wheel;
+    private volatile Consumer<ScheduledTransition> handler;
+
+    public TransitionScheduler(MongoTemplate mongoTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.scheduler.tick-ms:1000}") long tickMs,
+                               @Value("${app.scheduler.wheel-size:64}") int wheelSize,
+                               @Value("${app.scheduler.retry-delay-ms:30000}") long retryDelayMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.retryDelayMs = retryDelayMs;
+        this.wheel = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        Gauge.builder("scheduler.transitions.pending", this, TransitionScheduler::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        mongoTemplate.indexOps(ScheduledTransition.class)
+                .createIndex(new Index().on("fireAt", Sort.Direction.ASC));
+        List<ScheduledTransition> persisted = mongoTemplate.findAll(ScheduledTransition.class);
+        synchronized (this) {
+            persisted.forEach(t -> wheel.add(t.getId(), t.getFireAt().getTime(), t));
+        }
+        log.info("Đã nạp {} chuyển trạng thái hẹn giờ", persisted.size());
+    }
+
+    // Chủ sở hữu (OrderService) đăng ký cách thực hiện một chuyển trạng thái tới hạn
+    public void setHandler(Consumer<ScheduledTransition> handler) {
+        this.handler = handler;
+    }
+
+    public synchronized int size() {
+        return wheel.size();
+    }
+
+    public boolean isEmpty() {
+        return mongoTemplate.estimatedCount(ScheduledTransition.class) == 0;
+    }
+
+    // Hẹn giờ (thay timer cũ của cùng đối tượng nếu có)
+    public void schedule(String targetId, String fromStatus, String toStatus, Date fireAt) {
+        ScheduledTransition transition = ScheduledTransition.builder()
+                .id(targetId)
+                .fromStatus(fromStatus)
+                .toStatus(toStatus)
+                .fireAt(fireAt)
+                .createdAt(new Date())
+                .build();
+        mongoTemplate.save(transition);
+        synchronized (this) {
+            wheel.add(targetId, fireAt.getTime(), transition);
+        }
+    }
+
+    // Nạp nhiều timer một lần (backfill), giả định chưa có timer nào cho các đối tượng này
+    public void scheduleAll(Collection<ScheduledTransition> transitions) {
+        mongoTemplate.insertAll(transitions);
+        synchronized (this) {
+            transitions.forEach(t -> wheel.add(t.getId(), t.getFireAt().getTime(), t));
+        }
+    }
+
+    public void cancel(String targetId) {
+        synchronized (this) {
+            wheel.cancel(targetId);
+        }
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(targetId)), ScheduledTransition.class);
+    }
+
+    @Scheduled(fixedDelayString = "${app.scheduler.tick-ms:1000}")
+    public void tick() {
+        Consumer<ScheduledTransition> current = handler;
+        if (current == null) {
+            return;
+        }
+        List<ScheduledTransition> due;
+        synchronized (this) {
+            due = wheel.advance(System.currentTimeMillis());
+        }
+        for (ScheduledTransition transition : due) {
+            try {
+                current.accept(transition);
+                // Chỉ xoá đúng timer này; nếu handler vừa hẹn timer mới cho đối tượng thì giữ nguyên
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(transition.getId())
+                        .and("fireAt").is(transition.getFireAt())), ScheduledTransition.class);
+            } catch (RuntimeException e) {
+                log.warn("Chuyển trạng thái {} → {} cho {} thất bại, thử lại sau {} ms",
+                        transition.getFromStatus(), transition.getToStatus(), transition.getId(), retryDelayMs, e);
+                synchronized (this) {
+                    // Trong lúc chạy handler đối tượng có thể đã được hẹn timer khác
+                    if (!wheel.contains(transition.getId())) {
+                        wheel.add(transition.getId(), System.currentTimeMillis() + retryDelayMs, transition);
+                    }
+                }
+            }
+        }
+    }
+}
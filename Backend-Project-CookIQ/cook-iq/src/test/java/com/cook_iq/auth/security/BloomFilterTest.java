@@ -0,0 +1,28 @@
+package com.cook_iq.auth.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void addedValuesAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(1 << 16, 5);
+        IntStream.range(0, 5_000).parallel().forEach(i -> filter.add("token-" + i));
+
+        IntStream.range(0, 5_000).forEach(i -> assertThat(filter.mightContain("token-" + i)).isTrue());
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheory() {
+        // 10 bit mỗi phần tử, 5 hàm băm: lý thuyết ~1%
+        BloomFilter filter = new BloomFilter(100_000, 5);
+        IntStream.range(0, 10_000).forEach(i -> filter.add("in-" + i));
+
+        long falsePositives = IntStream.range(0, 100_000).filter(i -> filter.mightContain("out-" + i)).count();
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+}
@@ -0,0 +1,65 @@
+package com.cook_iq.auth.security;
+
+import com.cook_iq.auth.service.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class JwtAuthenticationFilterTest {
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void expiredTokenLeavesRequestUnauthenticated() throws Exception {
+        String token = jwtService(-60_000L)
+                .generateToken(User.withUsername("alice").password("x").roles("USER").build());
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/refresh");
+        request.addHeader("Authorization", "Bearer " + token);
+        AtomicInteger passed = new AtomicInteger();
+        filter(jwtService(60_000L)).doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> passed.incrementAndGet());
+
+        assertThat(passed).hasValue(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void malformedTokenLeavesRequestUnauthenticated() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader("Authorization", "Bearer not-a-jwt");
+        AtomicInteger passed = new AtomicInteger();
+        filter(jwtService(60_000L)).doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> passed.incrementAndGet());
+
+        assertThat(passed).hasValue(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    private static JwtAuthenticationFilter filter(JwtService jwtService) {
+        return new JwtAuthenticationFilter(jwtService,
+                mock(UserDetailsServiceImpl.class),
+                mock(TokenVersionService.class),
+                mock(TokenRevocationService.class),
+                true);
+    }
+
+    private static JwtService jwtService(long expirationMs) {
+        JwtService jwtService = new JwtService(new VerifiedTokenCache(100));
+        ReflectionTestUtils.setField(jwtService, "jwtSecret", "someSuperLongAndSecureSecretKeyAtLeast32Chars123!");
+        ReflectionTestUtils.setField(jwtService, "jwtExpirationMs", expirationMs);
+        jwtService.init();
+        return jwtService;
+    }
+}
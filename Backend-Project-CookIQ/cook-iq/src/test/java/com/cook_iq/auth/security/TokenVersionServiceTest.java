@@ -0,0 +1,60 @@
+package com.cook_iq.auth.security;
+
+import com.cook_iq.auth.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenVersionServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    @Test
+    void readsVersionOncePerTtl() {
+        User user = new User();
+        user.setTokenVersion(3L);
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(user);
+        TokenVersionService service = new TokenVersionService(mongoTemplate, new SimpleMeterRegistry(), 60_000, 100);
+
+        assertThat(service.isCurrent("u1", 3)).isTrue();
+        assertThat(service.isCurrent("u1", 2)).isFalse();
+        verify(mongoTemplate, times(1)).findOne(any(Query.class), eq(User.class));
+    }
+
+    @Test
+    void unknownUserIsDeleted() {
+        TokenVersionService service = new TokenVersionService(mongoTemplate, new SimpleMeterRegistry(), 60_000, 100);
+
+        assertThat(service.currentVersion("ghost")).isEqualTo(TokenVersionService.DELETED);
+        service.markDeleted("u1");
+        assertThat(service.currentVersion("u1")).isEqualTo(TokenVersionService.DELETED);
+    }
+
+    @Test
+    void cachedUsersStayBounded() throws InterruptedException {
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(new User());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TokenVersionService service = new TokenVersionService(mongoTemplate, registry, 60_000, 50);
+
+        for (int i = 0; i < 1_000; i++) {
+            service.currentVersion("u" + i);
+        }
+        // Caffeine dọn entry thừa bất đồng bộ nên chờ tối đa vài giây
+        long deadline = System.currentTimeMillis() + 5_000;
+        double size;
+        do {
+            Thread.sleep(10);
+            size = registry.get("cache.size").tag("cache", "users.tokenVersion").gauge().value();
+        } while (size > 50 && System.currentTimeMillis() < deadline);
+        assertThat(size).isLessThanOrEqualTo(50);
+    }
+}
@@ -0,0 +1,112 @@
+package com.cook_iq.auth.security;
+
+import com.cook_iq.auth.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VerifiedTokenCacheTest {
+
+    private static final String SECRET = "someSuperLongAndSecureSecretKeyAtLeast32Chars123!";
+
+    @Test
+    void returnsCachedClaimsUntilExpiry() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        cache.put("a", claims("alice", 60_000));
+
+        assertThat(cache.get("a").getSubject()).isEqualTo("alice");
+        assertThat(cache.get("b")).isNull();
+    }
+
+    @Test
+    void skipsTokensWithoutOrPastExpiry() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        cache.put("expired", claims("alice", -1_000));
+        cache.put("no-exp", Jwts.claims().setSubject("bob"));
+
+        assertThat(cache.get("expired")).isNull();
+        assertThat(cache.get("no-exp")).isNull();
+    }
+
+    @Test
+    void callersCannotChangeCachedClaims() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        Claims original = claims("alice", 60_000);
+        original.put(JwtService.CLAIM_ROLES, new ArrayList<>(List.of("ROLE_USER")));
+        cache.put("a", original);
+
+        original.put(JwtService.CLAIM_ROLES, List.of("ROLE_ADMIN"));
+        Claims first = cache.get("a");
+        first.setSubject("mallory");
+
+        Claims second = cache.get("a");
+        assertThat(second.getSubject()).isEqualTo("alice");
+        assertThat(second.get(JwtService.CLAIM_ROLES)).isEqualTo(List.of("ROLE_USER"));
+        assertThatThrownBy(() -> second.get(JwtService.CLAIM_ROLES, List.class).add("ROLE_ADMIN"))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void staysWithinMaxEntries() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(50);
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("token-" + i, claims("user" + i, 60_000));
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(50);
+    }
+
+    /**
+     * Microbenchmark: verify HMAC mỗi lần so với đọc từ cache cùng một token.
+     * Chạy bằng {@code mvn test -Dtest=VerifiedTokenCacheTest -Dbenchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkCachedVersusVerified() {
+        JwtService jwtService = new JwtService(new VerifiedTokenCache(10_000));
+        ReflectionTestUtils.setField(jwtService, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtService, "jwtExpirationMs", 60_000L);
+        jwtService.init();
+        String token = jwtService.generateToken(User.withUsername("alice").password("x").roles("USER").build());
+        JwtParser parser = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build();
+
+        int iterations = 200_000;
+        for (int i = 0; i < iterations; i++) {
+            parser.parseClaimsJws(token);
+            jwtService.parseClaims(token);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parser.parseClaimsJws(token);
+        }
+        long verified = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            jwtService.parseClaims(token);
+        }
+        long cached = System.nanoTime() - start;
+
+        System.out.printf("verify: %d ns/op, cached: %d ns/op%n", verified / iterations, cached / iterations);
+        assertThat(cached).isLessThan(verified);
+    }
+
+    private static Claims claims(String subject, long ttlMillis) {
+        return Jwts.claims()
+                .setSubject(subject)
+                .setExpiration(new Date(System.currentTimeMillis() + ttlMillis));
+    }
+}
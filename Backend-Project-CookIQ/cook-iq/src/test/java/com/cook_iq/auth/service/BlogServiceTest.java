@@ -0,0 +1,105 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.AddCommentRequest;
+import com.cook_iq.auth.model.BlogCommentBucket;
+import com.cook_iq.auth.model.BlogPost;
+import com.cook_iq.auth.model.User;
+import com.cook_iq.auth.repository.BlogPostRepository;
+import com.cook_iq.auth.repository.UserRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlogServiceTest {
+
+    private final UserRepository userRepo = mock(UserRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BlogService service = new BlogService(mock(BlogPostRepository.class), userRepo, mongoTemplate, 20, 100);
+
+    @Test
+    void olderPagesOfUnapprovedPostAreRejected() {
+        // findOne có điều kiện approved = true nên bài chưa duyệt / bị gỡ duyệt trả về null
+        when(mongoTemplate.findOne(any(Query.class), eq(BlogPost.class))).thenReturn(null);
+
+        assertThatThrownBy(() -> service.getComments("b1", 50L, 10)).hasMessage("Post not found or not approved");
+        verify(mongoTemplate, never()).find(any(Query.class), eq(BlogCommentBucket.class));
+    }
+
+    @Test
+    void embeddedCommentsAreSortedBySeqBeforeSlicing() {
+        User user = new User();
+        user.setId("u1");
+        when(userRepo.findById("u1")).thenReturn(Optional.of(user));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlogPost.class))).thenReturn(BlogPost.builder().id("b1").commentCount(7L).build());
+        AddCommentRequest req = new AddCommentRequest();
+        req.setUserId("u1");
+        req.setContent("Ngon");
+
+        service.addComment("b1", req);
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), updates.capture(),
+                any(FindAndModifyOptions.class), eq(BlogPost.class));
+        Map<?, ?> push = (Map<?, ?>) updates.getAllValues().get(1).getUpdateObject().get("$push");
+        Map<String, Object> modifiers = ((Update.Modifiers) push.get("comments")).getModifiers().stream()
+                .collect(Collectors.toMap(Update.Modifier::getKey, Update.Modifier::getValue));
+        assertThat(modifiers.get("$sort")).isEqualTo(Sort.by("seq"));
+        assertThat(modifiers.get("$slice")).isEqualTo(-20);
+    }
+
+    @Test
+    void commentOnUnmigratedPostMigratesItFirst() {
+        User user = new User();
+        user.setId("u1");
+        when(userRepo.findById("u1")).thenReturn(Optional.of(user));
+        // Bài do node bản cũ tạo: chưa có commentCount, 2 comment nhúng chưa có seq
+        BlogPost legacy = BlogPost.builder().id("b1").comments(new ArrayList<>(List.of(
+                BlogPost.Comment.builder().id("c1").content("a").build(),
+                BlogPost.Comment.builder().id("c2").content("b").build()))).build();
+        when(mongoTemplate.findOne(any(Query.class), eq(BlogPost.class))).thenReturn(legacy);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlogPost.class)))
+                .thenReturn(null, BlogPost.builder().id("b1").commentCount(3L).build(), legacy);
+        AddCommentRequest req = new AddCommentRequest();
+        req.setUserId("u1");
+        req.setContent("c");
+
+        service.addComment("b1", req);
+
+        ArgumentCaptor<Query> counterQueries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(3)).findAndModify(counterQueries.capture(), any(Update.class),
+                any(FindAndModifyOptions.class), eq(BlogPost.class));
+        assertThat(counterQueries.getAllValues().get(0).getQueryObject().get("commentCount"))
+                .isEqualTo(new Document("$exists", true));
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(BlogPost.class));
+        assertThat(legacy.getComments()).extracting(BlogPost.Comment::getSeq).containsExactly(1L, 2L);
+
+        // Comment mới nhận seq 3 trong bucket 0, sau 2 comment đã chuyển
+        ArgumentCaptor<Update> bucketUpdates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).upsert(any(Query.class), bucketUpdates.capture(), eq(BlogCommentBucket.class));
+        Map<?, ?> push = (Map<?, ?>) bucketUpdates.getAllValues().get(1).getUpdateObject().get("$push");
+        assertThat(((BlogPost.Comment) push.get("comments")).getSeq()).isEqualTo(3L);
+    }
+}
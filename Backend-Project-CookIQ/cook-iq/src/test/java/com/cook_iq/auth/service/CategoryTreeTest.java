@@ -0,0 +1,52 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Category;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CategoryTreeTest {
+
+    @Test
+    void subtreeAndAncestorsFollowParentIds() {
+        CategoryTree tree = CategoryTree.build(List.of(
+                category("food", null),
+                category("veg", "food"),
+                category("leaf", "veg"),
+                category("meat", "food"),
+                // "food2" có path bắt đầu bằng "/food" nhưng không thuộc cây con của "food"
+                category("food2", null)));
+
+        assertThat(tree.subtree(tree.get("food"))).extracting(CategoryTree.Node::id)
+                .containsExactlyInAnyOrder("food", "veg", "leaf", "meat");
+        assertThat(tree.subtree(tree.get("veg"))).extracting(CategoryTree.Node::id)
+                .containsExactlyInAnyOrder("veg", "leaf");
+        assertThat(tree.ancestors(tree.get("leaf"))).extracting(CategoryTree.Node::id)
+                .containsExactly("food", "veg", "leaf");
+        assertThat(tree.get("leaf").depth()).isEqualTo(2);
+        assertThat(tree.roots()).extracting(CategoryTree.Node::id).containsExactly("food", "food2");
+        assertThat(tree.get("food").children()).extracting(CategoryTree.Node::id).containsExactly("meat", "veg");
+    }
+
+    @Test
+    void orphansAndCyclesBecomeRoots() {
+        CategoryTree tree = CategoryTree.build(List.of(
+                category("orphan", "missing"),
+                category("a", "b"),
+                category("b", "a"),
+                category("self", "self")));
+
+        assertThat(tree.size()).isEqualTo(4);
+        assertThat(tree.get("orphan").depth()).isZero();
+        assertThat(tree.get("self").depth()).isZero();
+        // Vòng a ↔ b bị cắt: đúng một node thành gốc, node còn lại là con của nó
+        assertThat(tree.get("a").depth() + tree.get("b").depth()).isEqualTo(1);
+        assertThat(tree.deepestFirst().get(0).depth()).isEqualTo(1);
+    }
+
+    private static Category category(String id, String parentId) {
+        return new Category(id, id, id + "-slug", parentId, null);
+    }
+}
@@ -0,0 +1,62 @@
+package com.cook_iq.auth.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InventoryJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentAppendsAreAllReadBack() throws InterruptedException {
+        InventoryJournal journal = new InventoryJournal(directory, 4);
+        int products = 16;
+        int perProduct = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(products);
+        for (int p = 0; p < products; p++) {
+            String productId = "p" + p;
+            pool.execute(() -> {
+                for (int seq = 1; seq <= perProduct; seq++) {
+                    journal.append(productId, seq, -1);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        journal.close();
+
+        Map<String, List<Long>> seqs = journal.readAll().stream().collect(Collectors.groupingBy(
+                InventoryJournal.Entry::productId,
+                Collectors.mapping(InventoryJournal.Entry::seq, Collectors.toList())));
+        assertThat(seqs).hasSize(products);
+        // Mỗi sản phẩm nằm trên một stripe nên seq được ghi theo đúng thứ tự
+        List<Long> expected = LongStream.rangeClosed(1, perProduct).boxed().toList();
+        seqs.values().forEach(list -> assertThat(list).isEqualTo(expected));
+    }
+
+    @Test
+    void deleteKeepsEntriesWrittenAfterRoll() {
+        InventoryJournal journal = new InventoryJournal(directory, 4);
+        journal.append("a", 1, -2);
+        journal.append("b", 1, -3);
+
+        List<Path> closed = journal.roll();
+        journal.append("a", 2, 5);
+        journal.delete(closed);
+
+        assertThat(journal.readAll()).containsExactly(new InventoryJournal.Entry("a", 2, 5));
+        journal.close();
+    }
+}
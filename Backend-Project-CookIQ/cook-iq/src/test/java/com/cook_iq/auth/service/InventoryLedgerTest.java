@@ -0,0 +1,110 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InventoryLedgerTest {
+
+    @TempDir
+    Path journalDir;
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private InventoryLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        Product product = new Product();
+        product.setId("hot");
+        product.setStockQuantity(10);
+        product.setLedgerSeq(0L);
+        when(mongoTemplate.findById("hot", Product.class)).thenReturn(product);
+        ledger = new InventoryLedger(mongoTemplate, new SimpleMeterRegistry(), Set.of("hot"), journalDir.toString(), 2);
+        ledger.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.shutdown();
+    }
+
+    @Test
+    void flushWaitsForOverwriteToReachMongo() throws Exception {
+        ledger.reserve("hot", 3);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Long> overwrite = CompletableFuture.supplyAsync(() -> ledger.overwrite("hot", 50, seq -> {
+            writing.countDown();
+            await(release);
+            return seq;
+        }));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(ledger::flush);
+
+        // flush phải chờ overwrite ghi xong Mongo
+        Thread.sleep(100);
+        assertThat(flush).isNotDone();
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Product.class));
+        release.countDown();
+
+        assertThat(overwrite.get(5, TimeUnit.SECONDS)).isEqualTo(1L);
+        flush.get(5, TimeUnit.SECONDS);
+        assertThat(ledger.available("hot")).isEqualTo(50);
+        // Delta -3 đã bị ghi đè nên flush không còn gì để $inc
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Product.class));
+    }
+
+    @Test
+    void failedOverwriteKeepsLedgerState() {
+        ledger.reserve("hot", 3);
+
+        assertThatThrownBy(() -> ledger.overwrite("hot", 50, seq -> {
+            throw new RuntimeException("Product not found");
+        })).hasMessage("Product not found");
+
+        assertThat(ledger.available("hot")).isEqualTo(7);
+        ledger.flush();
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(Product.class));
+    }
+
+    @Test
+    void reservationsAfterOverwriteAreFlushedWithNewerSeq() {
+        ledger.overwrite("hot", 20, seq -> seq);
+        assertThat(ledger.reserve("hot", 5)).isTrue();
+        assertThat(ledger.reserve("hot", 16)).isFalse();
+        assertThat(ledger.available("hot")).isEqualTo(15);
+
+        ledger.flush();
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(Product.class));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.CreateOrderRequest;
+import com.cook_iq.auth.exception.TooManyRequestsException;
+import com.cook_iq.auth.model.IdempotencyRecord;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import com.cook_iq.auth.repository.OrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderIngestionServiceTest {
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final OrderRepository orderRepo = mock(OrderRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final OrderIngestionService service = new OrderIngestionService(orderService, orderRepo, mongoTemplate,
+            new SimpleMeterRegistry(), 16, 4, 24, 1, 60_000);
+
+    @Test
+    void retryWithSameKeyReturnsStoredOrderWithoutRevalidating() {
+        Order stored = Order.builder().id("o1").userId("u").status(OrderStatus.PENDING).build();
+        when(mongoTemplate.findById("u:key-1", IdempotencyRecord.class))
+                .thenReturn(IdempotencyRecord.builder().id("u:key-1").orderId("o1").build());
+        when(orderRepo.findById("o1")).thenReturn(Optional.of(stored));
+        // Giỏ hàng giờ đã hết hàng: kiểm tra lại sẽ ném lỗi
+        when(orderService.buildOrder(any(), any())).thenThrow(new RuntimeException("không đủ số lượng tồn kho"));
+
+        assertThat(service.createOrder("u", "key-1", new CreateOrderRequest())).isSameAs(stored);
+        assertThat(service.submitOrder("u", "key-1", new CreateOrderRequest())).isSameAs(stored);
+        verify(orderService, never()).buildOrder(any(), any());
+    }
+
+    @Test
+    void keyOfOrderLostBeforeSavingIsReclaimedAfterGrace() {
+        // Process trước chết khi đơn o1 còn trong hàng đợi: key còn đó nhưng đơn không bao giờ được lưu
+        when(mongoTemplate.findById("u:key-1", IdempotencyRecord.class)).thenReturn(record(120_000));
+        when(orderRepo.findById("o1")).thenReturn(Optional.empty());
+        Order retry = Order.builder().id("o2").userId("u").status(OrderStatus.PENDING).build();
+        when(orderService.buildOrder(any(), any())).thenReturn(retry);
+
+        assertThat(service.createOrder("u", "key-1", new CreateOrderRequest())).isSameAs(retry);
+        verify(mongoTemplate).remove(any(Query.class), eq(IdempotencyRecord.class));
+        verify(orderRepo).insert(retry);
+    }
+
+    @Test
+    void keyOfOrderStillInAnotherQueueAsksClientToRetry() {
+        when(mongoTemplate.findById("u:key-1", IdempotencyRecord.class)).thenReturn(record(1_000));
+        when(orderRepo.findById("o1")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.submitOrder("u", "key-1", new CreateOrderRequest()))
+                .isInstanceOf(TooManyRequestsException.class);
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(IdempotencyRecord.class));
+        verify(orderService, never()).buildOrder(any(), any());
+    }
+
+    @Test
+    void ordersLostByFailedBatchInsertAreSavedAsCancelled() {
+        Order saved = Order.builder().id("o1").userId("u").status(OrderStatus.PENDING).build();
+        Order lost = Order.builder().id("o2").userId("u").status(OrderStatus.PENDING).build();
+        when(orderService.reserveStock(saved)).thenReturn("r1");
+        when(orderService.reserveStock(lost)).thenReturn("r2");
+        when(mongoTemplate.insertAll(any())).thenThrow(new DataAccessResourceFailureException("timeout"));
+        when(orderRepo.findAllById(any())).thenReturn(List.of(saved));
+
+        ReflectionTestUtils.invokeMethod(service, "writeBatch", List.of(saved, lost));
+
+        verify(orderService).clearReservation(saved, "r1");
+        verify(orderService).releaseStock(lost, "r2");
+        verify(orderRepo).insert(lost);
+        assertThat(lost.getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(lost.getCancelReason()).isNotBlank();
+        // Client đã nhận id o2 (202): đơn huỷ phải hiện trong /my-orders
+        verify(orderService).onOrderCreated(saved);
+        verify(orderService).onOrderCreated(lost);
+    }
+
+    private static IdempotencyRecord record(long ageMs) {
+        return IdempotencyRecord.builder().id("u:key-1").orderId("o1")
+                .createdAt(new Date(System.currentTimeMillis() - ageMs)).build();
+    }
+}
@@ -0,0 +1,93 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import com.cook_iq.auth.model.ScheduledTransition;
+import com.cook_iq.auth.repository.OrderRepository;
+import com.cook_iq.auth.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tự huỷ đơn quá hạn thanh toán chỉ áp dụng cho đơn có paymentDueAt mà admin chưa xác nhận tiền.
+ */
+class OrderPaymentTimeoutTest {
+
+    private static final LocalDateTime LONG_AGO = LocalDateTime.of(2026, 1, 1, 8, 0);
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final TransitionScheduler transitionScheduler = mock(TransitionScheduler.class);
+    private final OrderService orderService = new OrderService(mock(OrderRepository.class), mock(ProductRepository.class),
+            mongoTemplate, new SimpleMeterRegistry(), mock(InventoryLedger.class), transitionScheduler,
+            mock(ApplicationEventPublisher.class), mock(ProductCache.class));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void backfillSkipsOrdersCreatedWithoutPaymentDeadline() {
+        Order legacy = pending("legacy", null);
+        Order due = pending("due", LONG_AGO.plusMinutes(30));
+        when(transitionScheduler.isEmpty()).thenReturn(true);
+        when(mongoTemplate.stream(any(Query.class), eq(Order.class))).thenReturn(Stream.of(legacy, due));
+
+        orderService.init();
+
+        ArgumentCaptor<Collection<ScheduledTransition>> scheduled = ArgumentCaptor.forClass(Collection.class);
+        verify(transitionScheduler).scheduleAll(scheduled.capture());
+        assertThat(scheduled.getValue()).extracting(ScheduledTransition::getId).containsExactly("due");
+    }
+
+    @Test
+    void markPaidCancelsTheTimeout() {
+        Order paid = pending("o1", LONG_AGO.plusMinutes(30));
+        paid.setPaidAt(LocalDateTime.now());
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Order.class))).thenReturn(paid);
+
+        assertThat(orderService.markPaid("o1")).isSameAs(paid);
+        verify(transitionScheduler).cancel("o1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void timeoutCancelOnlyMatchesUnpaidOrdersWithDeadline() {
+        orderService.init();
+        ArgumentCaptor<Consumer<ScheduledTransition>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(transitionScheduler).setHandler(handler.capture());
+
+        handler.getValue().accept(ScheduledTransition.builder().id("o1")
+                .fromStatus(OrderStatus.PENDING.name()).toStatus(OrderStatus.CANCELLED.name())
+                .fireAt(new Date()).build());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Order.class));
+        Document criteria = query.getValue().getQueryObject();
+        assertThat(criteria.get("paymentDueAt")).isEqualTo(new Document("$exists", true));
+        assertThat(criteria.get("paidAt")).isEqualTo(new Document("$exists", false));
+    }
+
+    private static Order pending(String id, LocalDateTime paymentDueAt) {
+        return Order.builder().id(id).status(OrderStatus.PENDING).paymentMethod("BANK")
+                .paymentDueAt(paymentDueAt).createdAt(LONG_AGO).updatedAt(LONG_AGO).build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.CreateOrderRequest;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.repository.OrderRepository;
+import com.cook_iq.auth.repository.ProductRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Nhiều luồng cùng mua phần tồn kho cuối cùng: đúng K đơn thành công, kho về 0 và không bán vượt.
+ * Kèm các trường hợp hoàn kho: dòng hết hàng, marker giữ chỗ bị bỏ lại.
+ * Cần Docker (Testcontainers); máy không có Docker thì bỏ qua.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class OrderServiceConcurrencyTest {
+
+    private static final int THREADS = 64;
+
+    @Container
+    static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+
+    private OrderService orderService;
+    private OrderRepository orderRepo;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getConnectionString());
+        mongoTemplate = new MongoTemplate(client, "cookiq_test");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(Product.class);
+        mongoTemplate.dropCollection(Order.class);
+        MongoRepositoryFactory repositories = new MongoRepositoryFactory(mongoTemplate);
+        orderRepo = repositories.getRepository(OrderRepository.class);
+        // Ledger mock: mọi sản phẩm là "cold", trừ kho bằng update có điều kiện trên Mongo
+        orderService = new OrderService(orderRepo,
+                repositories.getRepository(ProductRepository.class),
+                mongoTemplate,
+                new SimpleMeterRegistry(),
+                mock(InventoryLedger.class),
+                mock(TransitionScheduler.class),
+                mock(ApplicationEventPublisher.class),
+                mock(ProductCache.class));
+    }
+
+    @Test
+    void lastUnitsAreSoldExactlyOnce() throws InterruptedException {
+        int stock = 10;
+        insertProduct("p1", stock);
+
+        int succeeded = race(() -> orderService.createOrder("u", request(Map.of("p1", 1))));
+
+        assertThat(succeeded).isEqualTo(stock);
+        assertThat(stockOf("p1")).isZero();
+        assertThat(orderRepo.count()).isEqualTo(stock);
+        assertThat(mongoTemplate.exists(Query.query(Criteria.where("stockReservations.0").exists(true)),
+                Product.class)).isFalse();
+    }
+
+    @Test
+    void failedLinesRestoreEarlierLines() throws InterruptedException {
+        int scarce = 5;
+        insertProduct("scarce", scarce);
+        insertProduct("plenty", 1_000);
+
+        int succeeded = race(() -> orderService.createOrder("u", request(Map.of("plenty", 2, "scarce", 1))));
+
+        assertThat(succeeded).isEqualTo(scarce);
+        assertThat(stockOf("scarce")).isZero();
+        assertThat(stockOf("plenty")).isEqualTo(1_000 - 2 * scarce);
+        assertThat(orderRepo.count()).isEqualTo(scarce);
+    }
+
+    @Test
+    void onlySoldOutLinesAreReported() {
+        insertProduct("scarce", 1);
+        insertProduct("plenty", 100);
+        Order order = orderService.buildOrder("u", request(Map.of("plenty", 1, "scarce", 1)));
+        // Người khác mua hết giữa lúc kiểm tra giỏ và lúc giữ chỗ
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is("scarce")),
+                new Update().set("stockQuantity", 0), Product.class);
+
+        assertThatThrownBy(() -> orderService.reserveStock(order))
+                .hasMessageContaining("scarce")
+                .hasMessageNotContaining("plenty");
+        assertThat(stockOf("plenty")).isEqualTo(100);
+    }
+
+    @Test
+    void sweepRestoresStockOfUnsavedOrdersOnly() throws InterruptedException {
+        insertProduct("p1", 10);
+        ReflectionTestUtils.setField(orderService, "reservationGraceMs", 0L);
+
+        // Process "chết" sau khi giữ chỗ: một đơn chưa kịp lưu, một đơn đã lưu nhưng chưa bỏ marker
+        Order lost = orderService.buildOrder("u", request(Map.of("p1", 3)));
+        orderService.reserveStock(lost);
+        Order saved = orderService.buildOrder("u", request(Map.of("p1", 2)));
+        orderService.reserveStock(saved);
+        orderRepo.save(saved);
+        Thread.sleep(5);
+
+        orderService.sweepReservations();
+        orderService.sweepReservations();
+
+        assertThat(stockOf("p1")).isEqualTo(8);
+        assertThat(mongoTemplate.exists(Query.query(Criteria.where("stockReservations.0").exists(true)),
+                Product.class)).isFalse();
+    }
+
+    // Thả THREADS lần mua cùng lúc, trả về số lần thành công
+    private static int race(Runnable checkout) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                        checkout.run();
+                        succeeded.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        // Hết hàng: lần mua này thua
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertThat(pool.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        }
+        return succeeded.get();
+    }
+
+    private static void insertProduct(String id, int stock) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(id);
+        product.setPrice(10_000.0);
+        product.setStockQuantity(stock);
+        product.setIsActive(true);
+        mongoTemplate.insert(product);
+    }
+
+    private static int stockOf(String id) {
+        return mongoTemplate.findById(id, Product.class).getStockQuantity();
+    }
+
+    private static CreateOrderRequest request(Map<String, Integer> lines) {
+        List<CreateOrderRequest.CartItemDto> items = new ArrayList<>();
+        lines.forEach((productId, quantity) -> {
+            CreateOrderRequest.CartItemDto item = new CreateOrderRequest.CartItemDto();
+            item.setProductId(productId);
+            item.setQuantity(quantity);
+            items.add(item);
+        });
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setItems(items);
+        request.setCustomerName("Khách");
+        request.setPhone("0900000000");
+        request.setAddress("Hà Nội");
+        request.setPaymentMethod("COD");
+        return request;
+    }
+}
@@ -0,0 +1,147 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.dto.ProductFacetResult;
+import com.cook_iq.auth.event.ProductStockChangedEvent;
+import com.cook_iq.auth.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductFacetServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ProductService productService = mock(ProductService.class);
+    private final InventoryLedger inventoryLedger = mock(InventoryLedger.class);
+    private final ProductFacetService service = new ProductFacetService(mongoTemplate, productService, inventoryLedger,
+            new SimpleMeterRegistry(), new double[]{50000, 100000}, 30);
+
+    @BeforeEach
+    void setUp() {
+        // Mặc định không SKU nào hot: tồn kho lấy từ document
+        when(inventoryLedger.available(anyString())).thenReturn(null);
+        when(productService.getCards(anyList())).thenAnswer(invocation -> invocation.<List<String>>getArgument(0)
+                .stream().map(id -> ProductDto.builder().id(id).build()).toList());
+        when(mongoTemplate.stream(any(Query.class), eq(Product.class))).thenAnswer(invocation -> List.of(
+                product("a", "veg", List.of("rau", "organic"), 30000, 5, true),
+                product("b", "veg", List.of("rau"), 120000, 0, true),
+                product("c", "fruit", List.of("organic"), 100000, 3, true),
+                product("d", "fruit", List.of(), 600000, 1, false)).stream());
+        service.rebuild();
+    }
+
+    @Test
+    void eachFacetIsCountedWithoutItsOwnFilter() {
+        ProductFacetResult result = filter(List.of("veg"), null, false, null, null, null);
+
+        assertThat(ids(result)).containsExactly("b", "a");
+        assertThat(result.totalElements()).isEqualTo(2);
+        // Bộ đếm danh mục bỏ qua bộ lọc danh mục: vẫn thấy fruit để chọn thêm
+        assertThat(result.categories()).isEqualTo(Map.of("veg", 2L, "fruit", 1L));
+        assertThat(result.tags()).containsExactly(Map.entry("rau", 2L), Map.entry("organic", 1L));
+        assertThat(result.priceRanges()).containsExactly(Map.entry("0-50000", 1L), Map.entry("100000+", 1L));
+        assertThat(result.inStock()).isEqualTo(1);
+    }
+
+    @Test
+    void tagsMatchAnyOrAll() {
+        assertThat(ids(filter(null, List.of("rau", "organic"), false, null, null, null))).containsExactly("c", "b", "a");
+        assertThat(ids(filter(null, List.of("rau", "organic"), true, null, null, null))).containsExactly("a");
+        assertThat(ids(filter(null, List.of("rau", "missing"), true, null, null, null))).isEmpty();
+    }
+
+    @Test
+    void priceRangeChecksEachProductInPartialBuckets() {
+        // Mốc 100000 thuộc bucket phía trên nhưng vẫn nằm trong khoảng [50000, 100000]
+        assertThat(ids(filter(null, null, false, 50000.0, 100000.0, null))).containsExactly("c");
+        assertThat(ids(filter(null, null, false, 100000.0, null, null))).containsExactly("c", "b");
+    }
+
+    @Test
+    void newestProductsComeFirstAcrossPages() {
+        FacetServicePage first = page(0);
+        FacetServicePage second = page(1);
+
+        assertThat(first.ids()).containsExactly("c", "b");
+        assertThat(second.ids()).containsExactly("a");
+        assertThat(first.total()).isEqualTo(3);
+    }
+
+    @Test
+    void stockEventsAndLedgerStockUpdateInStock() {
+        service.onStockChanged(new ProductStockChangedEvent("b", 4));
+        assertThat(ids(filter(null, null, false, null, null, true))).containsExactly("c", "b", "a");
+
+        // Sản phẩm hot: tồn kho lấy từ ledger chứ không từ document
+        when(inventoryLedger.available("a")).thenReturn(0);
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(product("a", "veg", List.of("rau", "organic"), 30000, 5, true)));
+        service.sync();
+        assertThat(ids(filter(null, null, false, null, null, true))).containsExactly("c", "b");
+    }
+
+    @Test
+    void syncAppliesChangesFromOtherNodes() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(product("b", "fruit", List.of("rau"), 120000, 0, true)));
+
+        service.sync();
+
+        assertThat(ids(filter(List.of("fruit"), null, false, null, null, null))).containsExactly("c", "b");
+        assertThat(filter(null, null, false, null, null, null).categories())
+                .isEqualTo(Map.of("veg", 1L, "fruit", 2L));
+    }
+
+    @Test
+    void productsDeletedOnOtherNodesAreRemoved() {
+        when(productService.findDeleted(anyCollection())).thenReturn(Set.of("c"));
+
+        service.removeDeleted();
+
+        ProductFacetResult result = filter(null, null, false, null, null, null);
+        assertThat(ids(result)).containsExactly("b", "a");
+        assertThat(result.categories()).isEqualTo(Map.of("veg", 2L));
+        assertThat(result.tags()).isEqualTo(Map.of("rau", 2L, "organic", 1L));
+    }
+
+    private ProductFacetResult filter(List<String> categoryIds, List<String> tags, boolean matchAllTags,
+                                      Double minPrice, Double maxPrice, Boolean inStock) {
+        return service.filter(new ProductFacetService.FacetFilter(categoryIds, tags, matchAllTags,
+                minPrice, maxPrice, inStock, true), PageRequest.of(0, 10));
+    }
+
+    private FacetServicePage page(int page) {
+        ProductFacetResult result = service.filter(new ProductFacetService.FacetFilter(null, null, false,
+                null, null, null, true), PageRequest.of(page, 2));
+        return new FacetServicePage(ids(result), result.totalElements());
+    }
+
+    private static List<String> ids(ProductFacetResult result) {
+        return result.content().stream().map(ProductDto::getId).toList();
+    }
+
+    private static Product product(String id, String categoryId, List<String> tags, double price, int stock,
+                                   boolean active) {
+        return Product.builder().id(id).categoryId(categoryId).tags(tags).price(price).stockQuantity(stock)
+                .isActive(active).build();
+    }
+
+    private record FacetServicePage(List<String> ids, long total) {
+    }
+}
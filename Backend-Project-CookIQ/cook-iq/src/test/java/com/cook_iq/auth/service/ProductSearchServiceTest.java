@@ -0,0 +1,111 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.event.ProductChangedEvent;
+import com.cook_iq.auth.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductSearchServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ProductService productService = mock(ProductService.class);
+    private final ProductSearchService service =
+            new ProductSearchService(mongoTemplate, productService, new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() {
+        // Thẻ kết quả giữ đúng thứ tự id mà index trả về
+        when(productService.getCards(anyList())).thenAnswer(invocation -> invocation.<List<String>>getArgument(0)
+                .stream().map(id -> ProductDto.builder().id(id).build()).toList());
+        when(mongoTemplate.stream(any(Query.class), eq(Product.class))).thenAnswer(invocation -> List.of(
+                product("tomato", "Cà chua Đà Lạt", List.of("rau-cu"), "Cà chua bi tươi"),
+                product("mushroom", "Nấm kim châm", List.of("nam"), "Nấm tươi đóng hộp"),
+                product("salad", "Xà lách", List.of("rau"), "Ăn kèm cà chua, nấm"),
+                product("spinach", "Rau muống", List.of("rau"), null)).stream());
+        service.rebuild();
+    }
+
+    @Test
+    void queryMatchesWithoutDiacritics() {
+        assertThat(ids(service.search("ca chua", PageRequest.of(0, 10)))).startsWith("tomato").contains("salad");
+        assertThat(ids(service.search("ĐÀ LẠT", PageRequest.of(0, 10)))).containsExactly("tomato");
+        assertThat(ids(service.search("  ", PageRequest.of(0, 10)))).isEmpty();
+    }
+
+    @Test
+    void nameMatchOutranksDescriptionMatch() {
+        // "nam" có trong tên + tag của mushroom nhưng chỉ trong mô tả của salad
+        assertThat(ids(service.search("nam", PageRequest.of(0, 10)))).containsExactly("mushroom", "salad");
+    }
+
+    @Test
+    void documentsMatchingMoreTermsRankHigher() {
+        // "rau" khớp cả ba sản phẩm rau, "muong" chỉ khớp spinach
+        assertThat(ids(service.search("rau muong", PageRequest.of(0, 10)))).first().isEqualTo("spinach");
+    }
+
+    @Test
+    void pagesShareTheSameTotal() {
+        Page<ProductDto> first = service.search("rau", PageRequest.of(0, 2));
+        Page<ProductDto> second = service.search("rau", PageRequest.of(1, 2));
+
+        assertThat(first.getTotalElements()).isEqualTo(3);
+        assertThat(second.getTotalElements()).isEqualTo(3);
+        assertThat(ids(second)).hasSize(1).doesNotContainAnyElementsOf(ids(first));
+    }
+
+    @Test
+    void localChangesUpdateTheIndex() {
+        Product inactive = product("mushroom", "Nấm kim châm", List.of("nam"), null);
+        inactive.setIsActive(false);
+        service.onProductChanged(new ProductChangedEvent("mushroom", inactive));
+        service.onProductChanged(new ProductChangedEvent("spinach", null));
+
+        assertThat(ids(service.search("nam kim cham", PageRequest.of(0, 10)))).containsExactly("salad");
+        assertThat(ids(service.search("muong", PageRequest.of(0, 10)))).isEmpty();
+    }
+
+    @Test
+    void syncPicksUpChangesMadeOnOtherNodes() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(product("spinach", "Rau muống Đà Lạt", List.of("rau"), null)));
+
+        service.sync();
+
+        assertThat(ids(service.search("da lat", PageRequest.of(0, 10)))).containsExactlyInAnyOrder("tomato", "spinach");
+    }
+
+    @Test
+    void productsDeletedOnOtherNodesAreRemoved() {
+        when(productService.findDeleted(anyCollection())).thenReturn(Set.of("salad"));
+
+        service.removeDeleted();
+
+        assertThat(ids(service.search("ca chua", PageRequest.of(0, 10)))).containsExactly("tomato");
+    }
+
+    private static List<String> ids(Page<ProductDto> page) {
+        return page.getContent().stream().map(ProductDto::getId).toList();
+    }
+
+    private static Product product(String id, String name, List<String> tags, String shortDescription) {
+        return Product.builder().id(id).name(name).tags(tags).shortDescription(shortDescription).isActive(true).build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductServiceCategoryStampTest {
+
+    private static final Instant UPDATED = Instant.parse("2026-10-18T09:00:00Z");
+
+    private final InventoryLedger ledger = mock(InventoryLedger.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ProductService service = new ProductService(mock(ProductRepository.class), ledger,
+            mock(ProductCache.class), mongoTemplate, mock(ApplicationEventPublisher.class));
+
+    @Test
+    void stampWithoutHotProductsKeepsLastModified() {
+        when(ledger.hotProductIds()).thenReturn(Set.of());
+        stubNewest();
+
+        ProductService.CategoryStamp stamp = service.getCategoryStamp(List.of("c1"));
+
+        assertThat(stamp.liveStock()).isNull();
+        assertThat(stamp.lastModifiedMillis()).isEqualTo(UPDATED.toEpochMilli());
+    }
+
+    @Test
+    void stampChangesWithLedgerStockOfHotProducts() {
+        Product hot = new Product();
+        hot.setId("hot");
+        when(ledger.hotProductIds()).thenReturn(Set.of("hot"));
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(hot));
+        stubNewest();
+
+        when(ledger.available("hot")).thenReturn(5);
+        ProductService.CategoryStamp before = service.getCategoryStamp(List.of("c1"));
+        when(ledger.available("hot")).thenReturn(4);
+        ProductService.CategoryStamp after = service.getCategoryStamp(List.of("c1"));
+
+        assertThat(after.tag()).isNotEqualTo(before.tag());
+        // Ledger không đổi updatedAt nên không dùng Last-Modified
+        assertThat(after.lastModifiedMillis()).isEqualTo(-1);
+    }
+
+    private void stubNewest() {
+        Product newest = new Product();
+        newest.setUpdatedAt(UPDATED);
+        when(mongoTemplate.count(any(Query.class), eq(Product.class))).thenReturn(3L);
+        when(mongoTemplate.findOne(any(Query.class), eq(Product.class))).thenReturn(newest);
+    }
+}
@@ -0,0 +1,54 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.ProductDto;
+import com.cook_iq.auth.repository.ProductRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductServiceListingTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ProductService service = new ProductService(mock(ProductRepository.class),
+            mock(InventoryLedger.class), mock(ProductCache.class), mongoTemplate, mock(ApplicationEventPublisher.class));
+
+    @Test
+    void defaultListingKeepsEveryDtoField() {
+        // Frontend đọc categoryId, mô tả; form sửa của admin gửi lại nguyên các field này
+        Document projection = listWith(null);
+
+        assertThat(projection.keySet()).containsExactlyInAnyOrderElementsOf(ProductDto.ALL_FIELDS);
+    }
+
+    @Test
+    void cardProjectionIsOptIn() {
+        Document projection = listWith(ProductDto.CARD);
+
+        assertThat(projection.keySet()).containsExactlyInAnyOrderElementsOf(ProductDto.CARD_FIELDS);
+        assertThat(projection.get("images")).isEqualTo(new Document("$slice", 1));
+    }
+
+    private Document listWith(String fields) {
+        when(mongoTemplate.getCollectionName(any())).thenReturn("products");
+        when(mongoTemplate.find(any(Query.class), eq(ProductDto.class), anyString())).thenReturn(List.of());
+        service.listProducts(PageRequest.of(0, 20), fields);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(ProductDto.class), anyString());
+        return query.getValue().getFieldsObject();
+    }
+}
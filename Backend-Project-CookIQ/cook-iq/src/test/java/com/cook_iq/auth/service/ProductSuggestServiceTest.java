@@ -0,0 +1,114 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.dto.Suggestion;
+import com.cook_iq.auth.model.Product;
+import com.cook_iq.auth.model.SalesRollup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductSuggestServiceTest {
+
+    private static final String[] WORDS = {"cà", "chua", "đà", "lạt", "rau", "muống", "thịt", "bò", "gà", "ta",
+            "cá", "hồi", "nấm", "kim", "châm", "bắp", "cải", "trứng", "vịt", "hành"};
+
+    @Test
+    void suggestMatchesAnyWordStartWithoutDiacritics() {
+        ProductSuggestService service = service(List.of(
+                product("p1", "Cà chua Đà Lạt", "rau-cu"),
+                product("p2", "Cam sành", "trai-cay")), Map.of("p2", 5L));
+
+        assertThat(service.suggest("da l", 10)).extracting(Suggestion::text).containsExactly("Cà chua Đà Lạt");
+        // p2 bán chạy hơn nên đứng trước; "ca " chỉ khớp trọn từ "ca"
+        assertThat(service.suggest("ca", 10)).extracting(Suggestion::text).startsWith("Cam sành");
+        assertThat(service.suggest("ca ", 10)).extracting(Suggestion::text).containsExactly("Cà chua Đà Lạt");
+        assertThat(service.suggest("trai", 10)).extracting(Suggestion::type).containsExactly(Suggestion.TAG);
+    }
+
+    /**
+     * Đo độ trễ gợi ý: 10 000 tiền tố thả cùng lúc trên 64 luồng, 20 000 sản phẩm.
+     * Chạy bằng {@code mvn test -Dtest=ProductSuggestServiceTest -Dbenchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkConcurrentSuggest() throws InterruptedException {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int w = 0; w < 2 + random.nextInt(4); w++) {
+                name.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            products.add(product("p" + i, name.toString().trim() + " " + i, WORDS[random.nextInt(WORDS.length)]));
+        }
+        ProductSuggestService service = service(products, Map.of());
+
+        int queries = 10_000;
+        String[] prefixes = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            String word = VietnameseText.fold(WORDS[random.nextInt(WORDS.length)]);
+            prefixes[i] = word.substring(0, 1 + random.nextInt(word.length()));
+        }
+        long[] latencies = new long[queries];
+        CountDownLatch ready = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(queries);
+        ExecutorService pool = Executors.newFixedThreadPool(64);
+        for (int i = 0; i < queries; i++) {
+            int index = i;
+            pool.execute(() -> {
+                try {
+                    ready.await();
+                    long t = System.nanoTime();
+                    service.suggest(prefixes[index], 10);
+                    latencies[index] = System.nanoTime() - t;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        ready.countDown();
+        assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+        long wall = System.nanoTime() - start;
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("suggest: p50 %.1f us, p99 %.1f us, max %.1f us, %d queries/s%n",
+                latencies[queries / 2] / 1000.0, latencies[(int) (queries * 0.99)] / 1000.0,
+                latencies[queries - 1] / 1000.0, queries * 1_000_000_000L / Math.max(1, wall));
+    }
+
+    private static ProductSuggestService service(List<Product> products, Map<String, Long> unitsSold) {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.stream(any(Query.class), eq(Product.class))).thenAnswer(i -> products.stream());
+        SalesRollup day = SalesRollup.builder().granularity(SalesRollup.DAY).unitsByProduct(unitsSold).build();
+        when(mongoTemplate.find(any(Query.class), eq(SalesRollup.class))).thenReturn(List.of(day));
+        ProductSuggestService service = new ProductSuggestService(mongoTemplate, new SimpleMeterRegistry(), 10, 30);
+        service.init();
+        return service;
+    }
+
+    private static Product product(String id, String name, String tag) {
+        return Product.builder().id(id).name(name).slug(id).tags(List.of(tag)).isActive(true).build();
+    }
+}
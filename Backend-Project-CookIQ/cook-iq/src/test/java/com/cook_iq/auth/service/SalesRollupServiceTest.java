@@ -0,0 +1,122 @@
+package com.cook_iq.auth.service;
+
+import com.cook_iq.auth.event.OrderStatusChangedEvent;
+import com.cook_iq.auth.model.Order;
+import com.cook_iq.auth.model.OrderStatus;
+import com.cook_iq.auth.model.SalesRollup;
+import com.cook_iq.auth.repository.ProductRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+/**
+ * rebuild thay rollup bằng collection dựng mới, không làm mất thay đổi trạng thái xảy ra trong lúc dựng.
+ * Cần Docker (Testcontainers); máy không có Docker thì bỏ qua.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SalesRollupServiceTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2026, 10, 18, 9, 30);
+
+    @Container
+    static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getConnectionString());
+        mongoTemplate = new MongoTemplate(client, "cookiq_test");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(Order.class);
+        mongoTemplate.dropCollection(SalesRollup.class);
+        mongoTemplate.insert(order("o1", OrderStatus.PENDING, 100.0));
+        mongoTemplate.insert(order("o2", OrderStatus.DELIVERED, 50.0));
+    }
+
+    @Test
+    void rebuildReplacesStaleRollups() {
+        mongoTemplate.insert(SalesRollup.builder().id("DAY:2026-10-18").granularity(SalesRollup.DAY)
+                .bucketStart(CREATED.toLocalDate().atStartOfDay()).revenue(999.0).orderCount(42L).build());
+        SalesRollupService service = new SalesRollupService(mongoTemplate, mock(ProductRepository.class));
+
+        assertThat(service.rebuild()).isEqualTo(2);
+
+        SalesRollup day = mongoTemplate.findById("DAY:2026-10-18", SalesRollup.class);
+        assertThat(day.getOrderCount()).isEqualTo(2);
+        assertThat(day.getRevenue()).isEqualTo(150.0);
+        assertThat(mongoTemplate.findById("HOUR:2026-10-18T09", SalesRollup.class).getOrderCount()).isEqualTo(2);
+    }
+
+    @Test
+    void statusChangeDuringRebuildIsKept() {
+        MongoTemplate template = spy(mongoTemplate);
+        SalesRollupService service = new SalesRollupService(template, mock(ProductRepository.class));
+        service.rebuild();
+
+        // Lần rebuild thứ hai: đơn o1 bị huỷ ngay sau khi cursor đã đọc nó (bản dựng mới chưa thấy thay đổi)
+        boolean[] changed = {false};
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<Order> read = ((Stream<Order>) invocation.callRealMethod()).toList();
+            if (!changed[0]) {
+                changed[0] = true;
+                Order o1 = read.stream().filter(o -> o.getId().equals("o1")).findFirst().orElseThrow();
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is("o1")),
+                        new Update().set("status", OrderStatus.CANCELLED), Order.class);
+                service.onOrderStatusChanged(new OrderStatusChangedEvent(o1, OrderStatus.PENDING, OrderStatus.CANCELLED));
+            }
+            return read.stream();
+        }).when(template).stream(any(Query.class), eq(Order.class));
+
+        service.rebuild();
+
+        SalesRollup day = mongoTemplate.findById("DAY:2026-10-18", SalesRollup.class);
+        assertThat(day.getOrderCount()).isEqualTo(2);
+        assertThat(day.getRevenue()).isEqualTo(50.0);
+        assertThat(day.getStatusCounts()).containsEntry("CANCELLED", 1L).containsEntry("DELIVERED", 1L)
+                .doesNotContainKey("PENDING");
+    }
+
+    private static Order order(String id, OrderStatus status, double total) {
+        return Order.builder()
+                .id(id)
+                .userId("u")
+                .status(status)
+                .totalAmount(total)
+                .items(List.of(Order.OrderItem.builder().productId("p1").productName("p1").price(total).quantity(1).build()))
+                .createdAt(CREATED)
+                .updatedAt(CREATED)
+                .build();
+    }
+}
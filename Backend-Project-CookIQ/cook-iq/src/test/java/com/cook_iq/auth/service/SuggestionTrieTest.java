@@ -0,0 +1,93 @@
+package com.cook_iq.auth.service;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * So SuggestionTrie với cách làm vét cạn (lọc mọi key theo tiền tố rồi xếp hạng) trên dữ liệu ngẫu nhiên.
+ * Bảng chữ cái nhỏ để có nhiều tiền tố chung, key trùng nhau và key là tiền tố của key khác.
+ */
+class SuggestionTrieTest {
+
+    private static final String ALPHABET = "abc ";
+
+    @RepeatedTest(50)
+    void completeMatchesBruteForce(RepetitionInfo repetition) {
+        Random random = new Random(repetition.getCurrentRepetition());
+        int targets = 1 + random.nextInt(40);
+        long[] weights = new long[targets];
+        for (int t = 0; t < targets; t++) {
+            weights[t] = random.nextInt(5);
+        }
+        // Cùng kiểu xếp hạng như ProductSuggestService: trọng số giảm dần, hoà thì theo chỉ số
+        Comparator<Integer> rank = Comparator.<Integer>comparingLong(t -> weights[t]).reversed()
+                .thenComparingInt(t -> t);
+        int k = 1 + random.nextInt(6);
+
+        List<SuggestionTrie.Entry> entries = new ArrayList<>();
+        int keyCount = random.nextInt(120);
+        for (int i = 0; i < keyCount; i++) {
+            entries.add(new SuggestionTrie.Entry(randomKey(random, 1 + random.nextInt(7)), random.nextInt(targets)));
+        }
+        SuggestionTrie trie = SuggestionTrie.build(entries, rank, k);
+
+        List<String> prefixes = new ArrayList<>(List.of(""));
+        for (int i = 0; i < 200; i++) {
+            prefixes.add(randomKey(random, 1 + random.nextInt(8)));
+        }
+        entries.forEach(e -> prefixes.add(e.key()));
+
+        for (String prefix : prefixes) {
+            assertThat(trie.complete(prefix))
+                    .as("prefix '%s'", prefix)
+                    .containsExactly(bruteForce(entries, prefix, rank, k));
+        }
+    }
+
+    @Test
+    void emptyTrieHasNoCompletions() {
+        SuggestionTrie trie = SuggestionTrie.build(List.of(), Comparator.naturalOrder(), 10);
+
+        assertThat(trie.complete("")).isEmpty();
+        assertThat(trie.complete("ca")).isEmpty();
+        assertThat(trie.nodeCount()).isZero();
+    }
+
+    @Test
+    void trailingSpaceOnlyMatchesWholeWords() {
+        SuggestionTrie trie = SuggestionTrie.build(List.of(
+                new SuggestionTrie.Entry("ca chua", 0),
+                new SuggestionTrie.Entry("cam", 1)), Comparator.naturalOrder(), 10);
+
+        assertThat(trie.complete("ca")).containsExactly(0, 1);
+        assertThat(trie.complete("ca ")).containsExactly(0);
+        assertThat(trie.complete("cam ")).isEmpty();
+    }
+
+    private static int[] bruteForce(List<SuggestionTrie.Entry> entries, String prefix, Comparator<Integer> rank, int k) {
+        return entries.stream()
+                .filter(e -> e.key().startsWith(prefix))
+                .map(SuggestionTrie.Entry::target)
+                .distinct()
+                .sorted(rank)
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static String randomKey(Random random, int length) {
+        StringBuilder key = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            key.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.cook_iq.auth.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    @Test
+    void timersFireOnlyAfterTheirDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1_000);
+        wheel.add("a", 1_025, "a");
+        // Xa hơn tầng 0 (80 ms) và tầng 1 (640 ms) để phải hạ tầng nhiều lần
+        wheel.add("b", 1_500, "b");
+        wheel.add("c", 3_000, "c");
+
+        assertThat(wheel.advance(1_020)).isEmpty();
+        assertThat(wheel.advance(1_030)).containsExactly("a");
+        assertThat(wheel.advance(1_499)).isEmpty();
+        assertThat(wheel.advance(1_510)).containsExactly("b");
+        assertThat(wheel.advance(2_990)).isEmpty();
+        assertThat(wheel.advance(3_010)).containsExactly("c");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cancelAndReplaceByKey() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.add("order-1", 50, "first");
+        wheel.add("order-1", 200, "second");
+        wheel.add("order-2", 50, "other");
+
+        assertThat(wheel.cancel("order-2")).isTrue();
+        assertThat(wheel.cancel("order-2")).isFalse();
+        assertThat(wheel.advance(100)).isEmpty();
+        assertThat(wheel.advance(210)).containsExactly("second");
+    }
+
+    @Test
+    void pastDeadlineIsDueOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1_000);
+        wheel.add("late", 500, "late");
+
+        assertThat(wheel.contains("late")).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(1_000)).containsExactly("late");
+    }
+
+    // Tiến từng bước ngẫu nhiên: mỗi timer ra đúng một lần, không sớm hơn deadline và trễ không quá một tick
+    @Test
+    void randomTimersMatchSortedDeadlines() {
+        Random random = new Random(7);
+        long tick = 10;
+        TimingWheel<Long> wheel = new TimingWheel<>(tick, 16, 0);
+        TreeMap<Long, Long> pending = new TreeMap<>();
+        for (long i = 0; i < 2_000; i++) {
+            long deadline = random.nextInt(200_000);
+            wheel.add("t" + i, deadline, i);
+            pending.put(i, deadline);
+        }
+
+        List<Long> fired = new ArrayList<>();
+        long now = 0;
+        while (now < 201_000) {
+            now += 1 + random.nextInt(3_000);
+            for (long id : wheel.advance(now)) {
+                long deadline = pending.get(id);
+                assertThat(deadline).isLessThan(now);
+                assertThat(now - deadline).isLessThanOrEqualTo(3_000 + tick);
+                fired.add(id);
+            }
+        }
+        assertThat(fired).doesNotHaveDuplicates().hasSize(pending.size());
+    }
+}
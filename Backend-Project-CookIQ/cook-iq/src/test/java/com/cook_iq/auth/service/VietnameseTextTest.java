@@ -0,0 +1,21 @@
+package com.cook_iq.auth.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VietnameseTextTest {
+
+    @Test
+    void foldRemovesDiacriticsAndLowercases() {
+        assertThat(VietnameseText.fold("Cà chua Đà Lạt")).isEqualTo("ca chua da lat");
+        assertThat(VietnameseText.fold("Nước mắm Phú Quốc")).isEqualTo("nuoc mam phu quoc");
+        assertThat(VietnameseText.fold(null)).isEmpty();
+    }
+
+    @Test
+    void tokenizeSplitsOnNonLetters() {
+        assertThat(VietnameseText.tokenize("  Thịt bò-Úc, 500g! ")).containsExactly("thit", "bo", "uc", "500g");
+        assertThat(VietnameseText.tokenize("--")).isEmpty();
+    }
+}